@@ -0,0 +1,76 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.SyntheticImages;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the brightness stage: building the integral image or the pyramid of an image, and reading the
+ * brightness of every cell of the output grid from either.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrightnessBenchmark {
+    private static final String FONT = "Courier New";
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"64", "256"})
+    public int charsInRow;
+
+    private Image img;
+    private BrightnessImgCharMatcher matcher;
+    private BrightnessIntegralImage integralImage;
+    private BrightnessPyramid pyramid;
+    private double[][] brightnessImage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        img = Image.fromFile(SyntheticImages.writePng(size, size).toString());
+        integralImage = new BrightnessIntegralImage(img);
+        pyramid = new BrightnessPyramid(img);
+        matcher = new BrightnessImgCharMatcher(img, FONT);
+        brightnessImage = new double[matcher.rows(charsInRow)][charsInRow];
+    }
+
+    @Benchmark
+    public BrightnessIntegralImage buildIntegralImage() {
+        return new BrightnessIntegralImage(img);
+    }
+
+    @Benchmark
+    public double[][] cellBrightness() {
+        // Cells are laid out as in chooseChars, the last row being clipped to the image.
+        for(int row = 0; row < brightnessImage.length; row++) {
+            int y0 = matcher.cellStart(row, charsInRow);
+            int y1 = Math.min(img.getHeight(), matcher.cellStart(row + 1, charsInRow));
+            for(int col = 0; col < charsInRow; col++) {
+                brightnessImage[row][col] = integralImage.averageBrightness(matcher.cellStart(col, charsInRow), y0,
+                        matcher.cellStart(col + 1, charsInRow), y1);
+            }
+        }
+        return brightnessImage;
+    }
+
+    @Benchmark
+    public BrightnessPyramid buildPyramid() {
+        return new BrightnessPyramid(img);
+    }
+
+    @Benchmark
+    public double[][] pyramidCellBrightness() {
+        int level = BrightnessPyramid.levelOf(img.getWidth(), charsInRow);
+        for(int row = 0; row < brightnessImage.length; row++) {
+            pyramid.brightnessRow(level, row, brightnessImage[row]);
+        }
+        return brightnessImage;
+    }
+}
@@ -0,0 +1,30 @@
+package ascii_art.img_to_char;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getting the glyphs of a whole char set from CharRenderer, as done on every render.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharSetBenchmark {
+    private static final String FONT = "Courier New";
+    private static final int RESOLUTION = 16;
+
+    @Param({"10", "95"})
+    public int charSetSize;
+
+    @Benchmark
+    public void charSetGlyphs(Blackhole blackhole) {
+        for(int c = ' '; c < ' ' + charSetSize; c++) {
+            blackhole.consume(CharRenderer.getImg((char) c, RESOLUTION, FONT));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ascii_art.img_to_char;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching a grid of cell brightnesses with the closest characters of a char set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+    private static final long SEED = 42;
+
+    @Param({"64", "256", "1024"})
+    public int charsInRow;
+
+    @Param({"10", "95"})
+    public int charSetSize;
+
+    private double[][] brightnessImage;
+    private char[] charSet;
+    private double[] charBrightness;
+    private CharBrightnessTable table;
+    private char[][] asciiImage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        brightnessImage = new double[charsInRow][charsInRow];
+        for(double[] row : brightnessImage) {
+            for(int col = 0; col < row.length; col++) {
+                row[col] = random.nextDouble();
+            }
+        }
+        charSet = new char[charSetSize];
+        charBrightness = new double[charSetSize];
+        for(int i = 0; i < charSetSize; i++) {
+            charSet[i] = (char) (' ' + i);
+            charBrightness[i] = random.nextDouble();
+        }
+        table = new CharBrightnessTable(charSet, charBrightness);
+        asciiImage = new char[charsInRow][charsInRow];
+    }
+
+    @Benchmark
+    public CharBrightnessTable buildTable() {
+        return new CharBrightnessTable(charSet, charBrightness);
+    }
+
+    @Benchmark
+    public char[][] matchGrid() {
+        for(int row = 0; row < brightnessImage.length; row++) {
+            for(int col = 0; col < brightnessImage[row].length; col++) {
+                asciiImage[row][col] = table.closestChar(brightnessImage[row][col]);
+            }
+        }
+        return asciiImage;
+    }
+}
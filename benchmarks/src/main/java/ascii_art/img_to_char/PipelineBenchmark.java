@@ -0,0 +1,49 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.SyntheticImages;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures renders of an already loaded image, as issued by the shell render command. A cold render goes through the
+ * whole pipeline with a new matcher, while a warm render repeats a render of the same matcher, which is served from
+ * its brightness cache and only looks the characters up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final String FONT = "Courier New";
+    private static final CharSet DIGITS = new CharSet('0', '1', '2', '3', '4', '5', '6', '7', '8', '9');
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"64", "256"})
+    public int charsInRow;
+
+    private Image img;
+    private BrightnessImgCharMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        img = Image.fromFile(SyntheticImages.writePng(size, size).toString());
+        matcher = new BrightnessImgCharMatcher(img, FONT);
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return matcher.chooseChars(charsInRow, DIGITS);
+    }
+
+    @Benchmark
+    public char[][] coldChooseChars() {
+        return new BrightnessImgCharMatcher(img, FONT).chooseChars(charsInRow, DIGITS);
+    }
+}
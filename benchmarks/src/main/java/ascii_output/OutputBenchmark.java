@@ -0,0 +1,57 @@
+package ascii_output;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a rendered grid through ConsoleAsciiOutput, into a stream that discards everything so only
+ * the output code is measured, and through HtmlAsciiOutput into a temporary file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    @Param({"64", "256", "1024"})
+    public int charsInRow;
+
+    private char[][] asciiImage;
+    private ConsoleAsciiOutput consoleOutput;
+    private HtmlAsciiOutput htmlOutput;
+    private Path htmlFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        asciiImage = new char[charsInRow][charsInRow];
+        for(int row = 0; row < charsInRow; row++) {
+            for(int col = 0; col < charsInRow; col++) {
+                asciiImage[row][col] = (char) ('0' + (row + col) % 10);
+            }
+        }
+        consoleOutput = new ConsoleAsciiOutput(OutputStream.nullOutputStream());
+        htmlFile = Files.createTempFile("ascii-art", ".html");
+        htmlOutput = new HtmlAsciiOutput(htmlFile.toString(), "Courier New");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(htmlFile);
+    }
+
+    @Benchmark
+    public void consoleOutput() {
+        consoleOutput.output(asciiImage);
+    }
+
+    @Benchmark
+    public void htmlOutput() {
+        htmlOutput.output(asciiImage);
+    }
+}
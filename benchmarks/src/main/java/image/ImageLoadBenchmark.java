@@ -0,0 +1,33 @@
+package image;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding an image file and converting it to the Image representation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageLoadBenchmark {
+    @Param({"256", "1024", "2050"})
+    public int size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticImages.writePng(size, size);
+    }
+
+    @Benchmark
+    public Image decode() throws IOException {
+        return Image.fromFile(file.toString());
+    }
+}
@@ -0,0 +1,49 @@
+package image;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a row of packed RGB pixels to grayscale values, one pixel at a time and with the Vector
+ * API (the forked JVM adds the jdk.incubator.vector module).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LuminanceBenchmark {
+    @Param({"512", "8192"})
+    public int width;
+
+    private int[] pixels;
+    private double[] grayRow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(0);
+        pixels = new int[width];
+        for(int i = 0; i < width; i++) {
+            pixels[i] = random.nextInt();
+        }
+        grayRow = new double[width];
+        if(!Luminance.isVectorized()) {
+            throw new IllegalStateException("jdk.incubator.vector is not available");
+        }
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        Luminance.convertRowScalar(pixels, width, grayRow);
+        return grayRow;
+    }
+
+    @Benchmark
+    public double[] vector() {
+        Luminance.convertRow(pixels, width, grayRow);
+        return grayRow;
+    }
+}
@@ -0,0 +1,49 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic images, so the benchmarks run offline without sample files.
+ */
+public class SyntheticImages {
+    private static final long SEED = 42;
+
+    /**
+     * Generates an image made of gradients and noise, so every brightness level is represented.
+     * @param width Image width.
+     * @param height Image height.
+     * @return Generated image.
+     */
+    public static BufferedImage generate(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int red = x * 255 / width;
+                int green = y * 255 / height;
+                int blue = random.nextInt(256);
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Generates an image and writes it as a PNG to a temporary file, deleted on exit.
+     * @param width Image width.
+     * @param height Image height.
+     * @return Path of the PNG file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static Path writePng(int width, int height) throws IOException {
+        Path file = Files.createTempFile("ascii-art-" + width + "x" + height, ".png");
+        file.toFile().deleteOnExit();
+        ImageIO.write(generate(width, height), "png", file.toFile());
+        return file;
+    }
+}
@@ -0,0 +1,304 @@
+package ascii_art;
+
+import ascii_art.img_to_char.FrameMatcher;
+import ascii_output.AnsiAnimationOutput;
+import image.Image;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class that plays an animated GIF, or a directory of numbered frames, as an ASCII animation in an ANSI terminal.
+ * Frames are decoded one at a time and converted with a FrameMatcher, which shares the character table between
+ * the frames and only matches again the cells whose brightness changed, and drawn with an AnsiAnimationOutput,
+ * which only writes the cells that differ from the previous frame. Playback is paced to the target frame rate,
+ * and the achieved frame rate and conversion throughput are reported at the end.
+ */
+class AnimationPlayer {
+    private static final String FONT = "Courier New";
+    private static final double DEFAULT_FPS = 10;
+    private static final double DEFAULT_THRESHOLD = 0.02;
+    private static final String GIF_EXTENSION = ".gif";
+    private static final String[] FRAME_EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+    private static final Pattern FRAME_NUMBER = Pattern.compile("(\\d+)\\D*$");
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final String USAGE = "USAGE: java asciiArt --animate <gif file | frames directory>" +
+            " [--chars 0-9,a-z|all] [--res charsInRow] [--fps framesPerSecond] [--threshold brightness]";
+
+    private final Path input;
+    private final RenderOptions options;
+    private final double fps;
+    private final double threshold;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param input Animated GIF file, or directory of frames.
+     * @param options Characters used to draw the frames, and the number of characters in each row, clamped to the
+     *                valid range of each frame.
+     * @param fps Target frame rate, 0 to play as fast as possible.
+     * @param threshold Brightness change below which a cell keeps its character.
+     */
+    AnimationPlayer(Path input, RenderOptions options, double fps, double threshold) {
+        this.input = input;
+        this.options = options;
+        this.fps = fps;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Parses the animation command line arguments, which follow the "--animate" flag.
+     * @param args Arguments after the flag.
+     * @return Player, or null (after printing the usage) if the arguments are invalid.
+     */
+    static AnimationPlayer fromArgs(String[] args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println(USAGE);
+            return null;
+        }
+        RenderOptions options = new RenderOptions();
+        double fps = DEFAULT_FPS;
+        double threshold = DEFAULT_THRESHOLD;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--chars":
+                    case "--res":
+                        options.setFlag(args[i], args[i + 1]);
+                        break;
+                    case "--fps":
+                        fps = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "--threshold":
+                        threshold = Double.parseDouble(args[i + 1]);
+                        break;
+                    default:
+                        System.err.println(USAGE);
+                        return null;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return null;
+        }
+        if (!(fps >= 0) || !(threshold >= 0 && threshold <= 1)) {
+            System.err.println(USAGE);
+            return null;
+        }
+        return new AnimationPlayer(Path.of(args[0]), options, fps, threshold);
+    }
+
+    /**
+     * Plays the animation to the standard output and reports the frame rates to the standard error.
+     * @throws IOException if the frames cannot be read.
+     * @throws InterruptedException if interrupted while waiting for the next frame.
+     */
+    void run() throws IOException, InterruptedException {
+        FrameMatcher matcher = new FrameMatcher(FONT, options.charSet(), threshold);
+        AnsiAnimationOutput output = new AnsiAnimationOutput(System.out);
+        long frameNanos = fps == 0 ? 0 : (long) (NANOS_IN_SECOND / fps);
+        long start = System.nanoTime();
+        long convertNanos = 0;
+        int frames = 0;
+        Iterator<BufferedImage> frameIterator = Files.isDirectory(input) ? directoryFrames(input) : gifFrames(input);
+        while (frameIterator.hasNext()) {
+            long convertStart = System.nanoTime();
+            Image frame = Image.fromBufferedImage(frameIterator.next());
+            matcher.matchFrame(frame, options.charsInRow(frame), output);
+            convertNanos += System.nanoTime() - convertStart;
+            frames++;
+            long wait = start + frames * frameNanos - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / (long) NANOS_IN_MILLI, (int) (wait % (long) NANOS_IN_MILLI));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_IN_SECOND;
+        System.err.printf(Locale.ROOT, "%d frames in %.2f s: %.1f frames/s played, %.1f frames/s converted, " +
+                        "%.1f%% of cells matched, %.1f%% of cells written%n", frames, seconds, frames / seconds,
+                frames / (convertNanos / NANOS_IN_SECOND), percent(matcher.getMatchedCells(), matcher.getCells()),
+                percent(output.getWrittenCells(), matcher.getCells()));
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    /**
+     * Lists the image files of a directory in the order of the last number in their names (frame2 before
+     * frame10), and decodes them one at a time.
+     * @param directory Directory of frames.
+     * @return Iterator over the decoded frames.
+     * @throws IOException if the directory cannot be read.
+     */
+    private static Iterator<BufferedImage> directoryFrames(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(AnimationPlayer::isFrameFile)
+                    .sorted(Comparator.comparingLong(AnimationPlayer::frameNumber)
+                            .thenComparing(Path::getFileName))
+                    .collect(Collectors.toList());
+        }
+        Iterator<Path> paths = files.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public BufferedImage next() {
+                Path file = paths.next();
+                try {
+                    BufferedImage frame = ImageIO.read(file.toFile());
+                    if (frame == null) {
+                        throw new IOException("Unsupported image format: " + file);
+                    }
+                    return frame;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static boolean isFrameFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : FRAME_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return Files.isRegularFile(file);
+            }
+        }
+        return false;
+    }
+
+    private static long frameNumber(Path file) {
+        Matcher matcher = FRAME_NUMBER.matcher(file.getFileName().toString());
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Decodes the frames of an animated GIF one at a time. A GIF frame may cover only part of the logical screen,
+     * so each frame is drawn at its position over the previous ones, and the area of a frame whose disposal
+     * restores the background is cleared before the next frame.
+     * @param file GIF file.
+     * @return Iterator over the composed frames.
+     * @throws IOException if the file cannot be read or is not a GIF.
+     */
+    private static Iterator<BufferedImage> gifFrames(Path file) throws IOException {
+        if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(GIF_EXTENSION)) {
+            throw new IOException("Not a GIF file or a directory of frames: " + file);
+        }
+        ImageInputStream stream = ImageIO.createImageInputStream(file.toFile());
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("Unsupported image format: " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, false, false);
+        int frameCount = reader.getNumImages(true);
+        BufferedImage first = reader.read(0);
+        Node screen = child(reader.getStreamMetadata(), GIF_STREAM_METADATA, "LogicalScreenDescriptor");
+        int width = Math.max(first.getWidth(), intAttribute(screen, "logicalScreenWidth"));
+        int height = Math.max(first.getHeight(), intAttribute(screen, "logicalScreenHeight"));
+        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        return new Iterator<>() {
+            private int index = 0;
+            private Rectangle clearArea;
+
+            @Override
+            public boolean hasNext() {
+                if (index < frameCount) {
+                    return true;
+                }
+                close();
+                return false;
+            }
+
+            @Override
+            public BufferedImage next() {
+                try {
+                    BufferedImage frame = index == 0 ? first : reader.read(index);
+                    IIOMetadata metadata = reader.getImageMetadata(index);
+                    Node descriptor = child(metadata, GIF_IMAGE_METADATA, "ImageDescriptor");
+                    Node control = child(metadata, GIF_IMAGE_METADATA, "GraphicControlExtension");
+                    Graphics2D graphics = canvas.createGraphics();
+                    if (clearArea != null) {
+                        graphics.setComposite(AlphaComposite.Clear);
+                        graphics.fill(clearArea);
+                        graphics.setComposite(AlphaComposite.SrcOver);
+                    }
+                    int x = intAttribute(descriptor, "imageLeftPosition");
+                    int y = intAttribute(descriptor, "imageTopPosition");
+                    graphics.drawImage(frame, x, y, null);
+                    graphics.dispose();
+                    clearArea = control != null && RESTORE_TO_BACKGROUND.equals(attribute(control, "disposalMethod")) ?
+                            new Rectangle(x, y, frame.getWidth(), frame.getHeight()) : null;
+                    index++;
+                    return canvas;
+                } catch (IOException e) {
+                    close();
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            private void close() {
+                reader.dispose();
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Nothing is left to read from the stream.
+                }
+            }
+        };
+    }
+
+    /**
+     * Finds a child node of a metadata tree.
+     * @param metadata Metadata, or null.
+     * @param format Native metadata format name.
+     * @param name Name of the child node.
+     * @return Child node, or null if there is none.
+     */
+    private static Node child(IIOMetadata metadata, String format, String name) {
+        if (metadata == null) {
+            return null;
+        }
+        for (Node node = metadata.getAsTree(format).getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(name)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static String attribute(Node node, String name) {
+        Node attribute = node == null ? null : node.getAttributes().getNamedItem(name);
+        return attribute == null ? null : attribute.getNodeValue();
+    }
+
+    private static int intAttribute(Node node, String name) {
+        String value = attribute(node, name);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+}
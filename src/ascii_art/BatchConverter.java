@@ -0,0 +1,263 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class that converts many images without interaction, in a single JVM.
+ * Images are loaded on an I/O executor (virtual threads when the JVM supports them, a fixed pool otherwise) and
+ * converted on a fixed pool sized for the CPU, with a bound on the number of decoded images held in memory.
+ * A line with the timings or the failure of every file is printed as it completes.
+ */
+class BatchConverter {
+    private static final String FONT = "Courier New";
+    private static final String HTML_EXTENSION = ".html";
+    private static final String CONSOLE_EXTENSION = ".txt";
+    private static final String DEFAULT_OUTPUT_DIRECTORY = "ascii-out";
+    /**
+     * Separates an input file name from the number making its output name unique.
+     */
+    private static final String DUPLICATE_NAME_SEPARATOR = "-";
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final String USAGE = "USAGE: java asciiArt --batch <directory | file list> [--chars 0-9,a-z|all]" +
+            " [--res charsInRow] [--format html|console] [--out directory] [--threads count]" +
+            " [--quality exact|samplesPerCell] [--color on|off] [--match brightness|shape]";
+
+    private final List<Path> inputs;
+    private final RenderOptions options;
+    private final Path outputDirectory;
+    private final int threads;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param inputs Image files to convert.
+     * @param options Render options; the number of characters in a row is clamped to the valid range of each image.
+     * @param outputDirectory Directory receiving one output file per image.
+     * @param threads Number of threads converting images.
+     */
+    BatchConverter(List<Path> inputs, RenderOptions options, Path outputDirectory, int threads) {
+        this.inputs = inputs;
+        this.options = options;
+        this.outputDirectory = outputDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * Parses the batch mode command line arguments, which follow the "--batch" flag.
+     * @param args Arguments after the flag.
+     * @return Batch converter, or null (after printing the usage) if the arguments are invalid.
+     * @throws IOException if the input directory or file list cannot be read.
+     */
+    static BatchConverter fromArgs(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println(USAGE);
+            return null;
+        }
+        RenderOptions options = new RenderOptions();
+        Path outputDirectory = Path.of(DEFAULT_OUTPUT_DIRECTORY);
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--out":
+                        outputDirectory = Path.of(args[i + 1]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        if (!options.setFlag(args[i], args[i + 1])) {
+                            System.err.println(USAGE);
+                            return null;
+                        }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return null;
+        }
+        if (threads < 1) {
+            System.err.println(USAGE);
+            return null;
+        }
+        return new BatchConverter(listInputs(Path.of(args[0])), options, outputDirectory, threads);
+    }
+
+    /**
+     * Lists the images to convert: the image files of a directory, or the paths listed one per line in a file.
+     * @param input Directory or file list.
+     * @return Image files.
+     * @throws IOException if the directory or the file list cannot be read.
+     */
+    private static List<Path> listInputs(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> files = Files.list(input)) {
+                return files.filter(BatchConverter::isImageFile).sorted().collect(Collectors.toList());
+            }
+        }
+        try (Stream<String> lines = Files.lines(input)) {
+            return lines.map(String::strip).filter(line -> !line.isEmpty()).map(Path::of)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isImageFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return Files.isRegularFile(file);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the executor loading images: one virtual thread per task when the JVM supports them, otherwise a
+     * fixed pool.
+     * @param threads Size of the fallback pool.
+     * @return I/O executor.
+     */
+    static ExecutorService newIoExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * Converts all the images, printing a line for every file and a summary at the end.
+     * @return Number of files that failed.
+     * @throws IOException if the output directory cannot be created.
+     * @throws InterruptedException if interrupted while waiting for the conversions.
+     */
+    int run() throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        long start = System.nanoTime();
+        // Holds at most two decoded images per converting thread.
+        Semaphore loadedImages = new Semaphore(threads * 2);
+        ExecutorService ioExecutor = newIoExecutor(threads * 2);
+        ExecutorService cpuExecutor = Executors.newFixedThreadPool(threads);
+        int failures = 0;
+        try {
+            List<String> outputNames = outputNames(inputs);
+            List<Future<String>> results = new ArrayList<>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                String outputName = outputNames.get(i);
+                results.add(ioExecutor.submit(() -> convert(input, outputName, loadedImages, cpuExecutor)));
+            }
+            for (Future<String> result : results) {
+                try {
+                    System.out.println(result.get());
+                } catch (ExecutionException e) {
+                    failures++;
+                    System.out.println(e.getCause().getMessage());
+                }
+            }
+        } finally {
+            ioExecutor.shutdownNow();
+            cpuExecutor.shutdownNow();
+        }
+        System.out.printf(Locale.ROOT, "Converted %d of %d files in %.1f ms%n", inputs.size() - failures,
+                inputs.size(), (System.nanoTime() - start) / NANOS_IN_MILLI);
+        return failures;
+    }
+
+    /**
+     * Names the output file of every input after its file name, numbering the inputs whose name was already taken
+     * by a previous one (photo.jpg, photo.jpg-2, ...), so two inputs never write the same output file. Names are
+     * compared ignoring case, as some file systems do.
+     * @param inputs Image files.
+     * @return Output name of every input, without extension, at the same index.
+     */
+    static List<String> outputNames(List<Path> inputs) {
+        Set<String> taken = new HashSet<>();
+        List<String> names = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            String name = input.getFileName().toString();
+            String outputName = name;
+            for (int copy = 2; !taken.add(outputName.toLowerCase(Locale.ROOT)); copy++) {
+                outputName = name + DUPLICATE_NAME_SEPARATOR + copy;
+            }
+            names.add(outputName);
+        }
+        return names;
+    }
+
+    /**
+     * Loads an image on the calling I/O thread and converts it on the CPU executor.
+     * @param input Image file.
+     * @param outputName Name of the output file, without extension.
+     * @param loadedImages Permits bounding the number of decoded images in memory.
+     * @param cpuExecutor Executor converting the images.
+     * @return Report line of the file.
+     * @throws Exception with a report line as message if the file failed.
+     */
+    private String convert(Path input, String outputName, Semaphore loadedImages, ExecutorService cpuExecutor)
+            throws Exception {
+        loadedImages.acquire();
+        try {
+            long loadStart = System.nanoTime();
+            Image img = Image.fromFile(input.toString());
+            long loadTime = System.nanoTime() - loadStart;
+            long convertTime = cpuExecutor.submit(() -> render(img, outputName)).get();
+            String renamed = outputName.equals(input.getFileName().toString()) ? "" : " (as " + outputName + ")";
+            return String.format(Locale.ROOT, "%s: load %.1f ms, convert %.1f ms%s", input,
+                    loadTime / NANOS_IN_MILLI, convertTime / NANOS_IN_MILLI, renamed);
+        } catch (ExecutionException e) {
+            throw new Exception(input + ": FAILED " + e.getCause(), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            throw new Exception(input + ": FAILED " + e, e);
+        } finally {
+            loadedImages.release();
+        }
+    }
+
+    /**
+     * Converts an image and writes it to its output file.
+     * @param img Image.
+     * @param name Name of the output file, without extension.
+     * @return Conversion time in nanoseconds.
+     * @throws IOException if the output file cannot be written.
+     */
+    private long render(Image img, String name) throws IOException {
+        long start = System.nanoTime();
+        int imageCharsInRow = options.charsInRow(img);
+        BrightnessImgCharMatcher matcher = options.newMatcher(img, FONT);
+        if (options.html()) {
+            Path output = outputDirectory.resolve(name + HTML_EXTENSION);
+            matcher.chooseChars(imageCharsInRow, options.charSet(), new HtmlAsciiOutput(output.toString(), FONT));
+        } else {
+            try (OutputStream out = Files.newOutputStream(outputDirectory.resolve(name + CONSOLE_EXTENSION))) {
+                AsciiOutput output = new ConsoleAsciiOutput(out);
+                matcher.chooseChars(imageCharsInRow, options.charSet(), output);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -1,19 +1,157 @@
 package ascii_art;
 
+import ascii_art.img_to_char.CharRenderer;
 import image.Image;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 public class Driver {
+    /**
+     * System property naming a file in which rendered glyphs are persisted between runs.
+     */
+    private static final String GLYPH_CACHE_PROPERTY = "ascii_art.glyphCache";
+    /**
+     * System property setting the number of threads converting the image.
+     */
+    private static final String PARALLELISM_PROPERTY = "ascii_art.parallelism";
+
+    /**
+     * Flag selecting the non-interactive batch mode, see BatchConverter.
+     */
+    private static final String BATCH_FLAG = "--batch";
+    /**
+     * Flag starting the HTTP render service, see RenderServer.
+     */
+    private static final String SERVE_FLAG = "--serve";
+    /**
+     * Flag playing an animated GIF or a directory of frames in the terminal, see AnimationPlayer.
+     */
+    private static final String ANIMATE_FLAG = "--animate";
+    /**
+     * Flag running a script of shell commands instead of prompting, "-" reading the script from stdin.
+     */
+    private static final String SCRIPT_FLAG = "--script";
+    private static final String STDIN_SCRIPT = "-";
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("USAGE: java asciiArt ");
+        if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+            runBatch(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(ANIMATE_FLAG)) {
+            AnimationPlayer player = AnimationPlayer.fromArgs(Arrays.copyOfRange(args, 1, args.length));
+            if (player != null) {
+                player.run();
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+            runServer(Arrays.copyOfRange(args, 1, args.length));
             return;
         }
-        Image img = Image.fromFile(args[0]);
-        if (img == null) {
-            Logger.getGlobal().severe("Failed to open image file " + args[0]);
+        if (args.length != 1 && !(args.length == 3 && args[1].equals(SCRIPT_FLAG))) {
+            System.err.println("USAGE: java asciiArt <image> [--script <file | ->]");
+            return;
+        }
+        Image img;
+        try {
+            img = Image.fromFile(args[0]);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to open image file " + args[0] + ": " + e.getMessage());
+            return;
+        }
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        loadGlyphCache(glyphCacheFile);
+        Shell shell = new Shell(img, Integer.getInteger(PARALLELISM_PROPERTY, 1));
+        if (args.length == 1) {
+            shell.run();
+        } else {
+            try (BufferedReader script = openScript(args[2])) {
+                shell.runScript(script);
+            }
+        }
+        if (glyphCacheFile != null) {
+            CharRenderer.saveCache(Path.of(glyphCacheFile));
+        }
+    }
+
+    /**
+     * Converts a directory or a list of images without interaction. Exits with status 1 if any file failed.
+     * @param args Arguments following the batch flag.
+     */
+    private static void runBatch(String[] args) throws Exception {
+        BatchConverter converter = BatchConverter.fromArgs(args);
+        if (converter == null) {
             return;
         }
-        new Shell(img).run();
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        loadGlyphCache(glyphCacheFile);
+        int failures = converter.run();
+        if (glyphCacheFile != null) {
+            CharRenderer.saveCache(Path.of(glyphCacheFile));
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Serves renders over HTTP until the JVM is stopped, saving the glyph cache on shutdown.
+     * @param args Arguments following the serve flag.
+     */
+    private static void runServer(String[] args) throws Exception {
+        RenderServer server = RenderServer.fromArgs(args);
+        if (server == null) {
+            return;
+        }
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        loadGlyphCache(glyphCacheFile);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (glyphCacheFile != null) {
+                try {
+                    CharRenderer.saveCache(Path.of(glyphCacheFile));
+                } catch (IOException e) {
+                    Logger.getGlobal().warning("Failed to save glyph cache: " + e.getMessage());
+                }
+            }
+        }));
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" +
+                server.getAddress().getPort() + "/render");
+    }
+
+    /**
+     * Loads the glyph cache file, if any. The cache only saves rendering time, so a file that cannot be read is
+     * reported and the program goes on with an empty cache, which replaces the file when saved.
+     * @param glyphCacheFile Path of the cache file, or null.
+     */
+    private static void loadGlyphCache(String glyphCacheFile) {
+        if (glyphCacheFile == null) {
+            return;
+        }
+        try {
+            CharRenderer.loadCache(Path.of(glyphCacheFile));
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Ignoring glyph cache " + glyphCacheFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a script of shell commands.
+     * @param script Path of the script, or "-" for the standard input.
+     * @return Reader of the script.
+     */
+    private static BufferedReader openScript(String script) throws IOException {
+        if (script.equals(STDIN_SCRIPT)) {
+            return new BufferedReader(new InputStreamReader(System.in));
+        }
+        return Files.newBufferedReader(Path.of(script));
     }
-}
\ No newline at end of file
+}
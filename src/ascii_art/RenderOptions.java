@@ -0,0 +1,204 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharSet;
+import image.Image;
+
+/**
+ * Render options shared by the batch converter, the render server and the animation player: the characters, the
+ * number of characters in a row, the output format, the quality, the color and the matching, with their defaults.
+ * Options are set by name, from command line flags ("--res 80") or from query parameters ("res=80").
+ */
+class RenderOptions {
+    private static final String FLAG_PREFIX = "--";
+    private static final String CHARS_OPTION = "chars";
+    private static final String RES_OPTION = "res";
+    private static final String FORMAT_OPTION = "format";
+    private static final String QUALITY_OPTION = "quality";
+    private static final String COLOR_OPTION = "color";
+    private static final String MATCH_OPTION = "match";
+    private static final String ALL_CHARS = "all";
+    private static final String SPACE_CHAR = "space";
+    private static final String CHARS_SEPARATOR = ",";
+    private static final char MIN_VALID_CHAR = ' ';
+    private static final char MAX_VALID_CHAR = '~';
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final int DEFAULT_CHARS_IN_ROW = 64;
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final String HTML_FORMAT = "html";
+    private static final String CONSOLE_FORMAT = "console";
+    private static final String EXACT_QUALITY = "exact";
+    private static final int EXACT_SAMPLES_PER_CELL = 0;
+    private static final String COLOR_ON = "on";
+    private static final String COLOR_OFF = "off";
+    private static final String BRIGHTNESS_MATCH = "brightness";
+    private static final String SHAPE_MATCH = "shape";
+
+    private CharSet charSet = parseCharSet(DEFAULT_CHARS);
+    private int charsInRow = DEFAULT_CHARS_IN_ROW;
+    private boolean html = true;
+    private int samplesPerCell = EXACT_SAMPLES_PER_CELL;
+    private boolean colored;
+    private boolean shapeMatching;
+
+    /**
+     * Sets an option from a command line flag.
+     * @param flag Flag, such as "--res".
+     * @param value Value following the flag.
+     * @return True if the flag is a render option, false otherwise.
+     * @throws IllegalArgumentException if the value is invalid.
+     */
+    boolean setFlag(String flag, String value) {
+        return flag.startsWith(FLAG_PREFIX) && set(flag.substring(FLAG_PREFIX.length()), value);
+    }
+
+    /**
+     * Sets an option from its name.
+     * @param name Name, such as "res".
+     * @param value Value.
+     * @return True if the name is a render option, false otherwise.
+     * @throws IllegalArgumentException if the value is invalid.
+     */
+    boolean set(String name, String value) {
+        switch (name) {
+            case CHARS_OPTION:
+                charSet = parseCharSet(value);
+                break;
+            case RES_OPTION:
+                charsInRow = parseInt(name, value, 1);
+                break;
+            case FORMAT_OPTION:
+                html = parseChoice(name, value, HTML_FORMAT, CONSOLE_FORMAT);
+                break;
+            case QUALITY_OPTION:
+                samplesPerCell = value.equals(EXACT_QUALITY) ? EXACT_SAMPLES_PER_CELL : parseInt(name, value, 0);
+                break;
+            case COLOR_OPTION:
+                colored = parseChoice(name, value, COLOR_ON, COLOR_OFF);
+                break;
+            case MATCH_OPTION:
+                shapeMatching = parseChoice(name, value, SHAPE_MATCH, BRIGHTNESS_MATCH);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Characters used to draw the images.
+     */
+    CharSet charSet() {
+        return charSet;
+    }
+
+    /**
+     * Clamps the number of characters in a row to the valid range of an image: at least one full row of square
+     * sub images must fit in the image height, and sub images are at least two pixels wide.
+     * @param img Image.
+     * @return Valid number of characters in a row.
+     */
+    int charsInRow(Image img) {
+        int minCharsInRow = Math.max(1, (img.getWidth() + img.getHeight() - 1) / img.getHeight());
+        int maxCharsInRow = Math.max(1, img.getWidth() / MIN_PIXELS_PER_CHAR);
+        return Math.max(Math.min(charsInRow, maxCharsInRow), minCharsInRow);
+    }
+
+    /**
+     * @return True to output HTML, false to output console text.
+     */
+    boolean html() {
+        return html;
+    }
+
+    /**
+     * Creates a matcher for an image, set to the quality, color and matching of these options.
+     * @param img Image.
+     * @param font Font of the characters.
+     * @return Matcher.
+     */
+    BrightnessImgCharMatcher newMatcher(Image img, String font) {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, font);
+        matcher.setQuality(samplesPerCell);
+        matcher.setColored(colored);
+        matcher.setShapeMatching(shapeMatching);
+        return matcher;
+    }
+
+    /**
+     * Parses a comma separated list of "all", "space", single characters and ranges such as "a-z".
+     * @param chars Character list.
+     * @return Characters.
+     * @throws IllegalArgumentException if the list is invalid or empty.
+     */
+    private static CharSet parseCharSet(String chars) {
+        CharSet charSet = new CharSet();
+        for (String part : chars.split(CHARS_SEPARATOR)) {
+            if (part.equals(ALL_CHARS)) {
+                charSet.addRange(MIN_VALID_CHAR, MAX_VALID_CHAR);
+            } else if (part.equals(SPACE_CHAR)) {
+                charSet.add(' ');
+            } else if (part.length() == 1 && validChar(part.charAt(0))) {
+                charSet.add(part.charAt(0));
+            } else if (part.length() == 3 && part.charAt(1) == '-' &&
+                    validChar(part.charAt(0)) && validChar(part.charAt(2))) {
+                charSet.addRange((char) Math.min(part.charAt(0), part.charAt(2)),
+                        (char) Math.max(part.charAt(0), part.charAt(2)));
+            } else {
+                throw invalid(CHARS_OPTION, chars);
+            }
+        }
+        if (charSet.isEmpty()) {
+            throw invalid(CHARS_OPTION, chars);
+        }
+        return charSet;
+    }
+
+    private static boolean validChar(char c) {
+        return MIN_VALID_CHAR <= c && c <= MAX_VALID_CHAR;
+    }
+
+    /**
+     * Parses a number that is at least a minimum.
+     * @param name Option name.
+     * @param value Value.
+     * @param min Minimal valid number.
+     * @return Number.
+     * @throws IllegalArgumentException if the value is not a number or is below the minimum.
+     */
+    private static int parseInt(String name, String value, int min) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid(name, value);
+        }
+        if (number < min) {
+            throw invalid(name, value);
+        }
+        return number;
+    }
+
+    /**
+     * Parses a value that is one of two choices.
+     * @param name Option name.
+     * @param value Value.
+     * @param trueChoice Choice parsed as true.
+     * @param falseChoice Choice parsed as false.
+     * @return True for the first choice, false for the second.
+     * @throws IllegalArgumentException if the value is neither choice.
+     */
+    private static boolean parseChoice(String name, String value, String trueChoice, String falseChoice) {
+        if (value.equals(trueChoice)) {
+            return true;
+        }
+        if (value.equals(falseChoice)) {
+            return false;
+        }
+        throw invalid(name, value);
+    }
+
+    private static IllegalArgumentException invalid(String name, String value) {
+        return new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+}
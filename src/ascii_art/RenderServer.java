@@ -0,0 +1,471 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class that serves renders over HTTP, so other programs convert images without starting a JVM per image.
+ * POST /render?chars=0-9,a-z&res=64&format=html|console&quality=exact|n&color=on|off&match=brightness|shape
+ * with an image file as the request body returns the HTML page or the console text. Requests are handled on the
+ * I/O executor (virtual threads when the JVM supports them), renders run on a fixed pool of maxRenders threads,
+ * and a request arriving while all of them are busy, or while twice as many requests are in progress, is refused
+ * at once with 429 instead of queueing. A client that stalls its upload or the response past the timeout is
+ * disconnected, and a render that takes longer than the timeout is cancelled and answered with 503. Rendered glyphs
+ * are shared by all the requests through the CharRenderer cache.
+ * The server listens on the loopback address unless told otherwise.
+ */
+class RenderServer {
+    private static final String FONT = "Courier New";
+    private static final String RENDER_PATH = "/render";
+    private static final String POST_METHOD = "POST";
+    private static final int DEFAULT_PORT = 8080;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_UPLOAD_BYTES = 32 << 20;
+    /**
+     * Requests in progress, uploading or rendering, for every render slot.
+     */
+    private static final int REQUESTS_PER_RENDER = 2;
+    /**
+     * Threads of the fallback request pool for every request in progress, so the requests beyond the limit still
+     * find a thread to refuse them.
+     */
+    private static final int THREADS_PER_REQUEST = 2;
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    private static final int STATUS_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_INTERNAL_ERROR = 500;
+    private static final int STATUS_UNAVAILABLE = 503;
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final String USAGE = "USAGE: java asciiArt --serve [--port port] [--bind address]" +
+            " [--max-renders count] [--timeout seconds]";
+
+    /**
+     * Answer to a request.
+     */
+    private record Response(int status, String contentType, byte[] body) {}
+
+    /**
+     * Failed request, answered with its status and message.
+     */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Blocking I/O on a client connection.
+     * @param <T> Result type.
+     */
+    private interface ConnectionIo<T> {
+        T run() throws RequestException, IOException;
+    }
+
+    private final InetSocketAddress address;
+    private final int maxRenders;
+    private final long timeoutSeconds;
+    private final Semaphore renders;
+    private final Semaphore requests;
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ExecutorService renderExecutor;
+    private ScheduledExecutorService ioDeadlines;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param address Address and port to listen on, port 0 for any free port.
+     * @param maxRenders Maximal number of renders running at the same time.
+     * @param timeoutSeconds Maximal duration of a render.
+     */
+    RenderServer(InetSocketAddress address, int maxRenders, long timeoutSeconds) {
+        this.address = address;
+        this.maxRenders = maxRenders;
+        this.timeoutSeconds = timeoutSeconds;
+        renders = new Semaphore(maxRenders);
+        requests = new Semaphore(maxRenders * REQUESTS_PER_RENDER);
+    }
+
+    /**
+     * Parses the server command line arguments, which follow the "--serve" flag.
+     * @param args Arguments after the flag.
+     * @return Server, or null (after printing the usage) if the arguments are invalid.
+     */
+    static RenderServer fromArgs(String[] args) {
+        if (args.length % 2 != 0) {
+            System.err.println(USAGE);
+            return null;
+        }
+        int port = DEFAULT_PORT;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        int maxRenders = Runtime.getRuntime().availableProcessors();
+        long timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--bind":
+                        bindAddress = InetAddress.getByName(args[i + 1]);
+                        break;
+                    case "--max-renders":
+                        maxRenders = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--timeout":
+                        timeoutSeconds = Long.parseLong(args[i + 1]);
+                        break;
+                    default:
+                        System.err.println(USAGE);
+                        return null;
+                }
+            }
+        } catch (NumberFormatException | IOException e) {
+            System.err.println(USAGE);
+            return null;
+        }
+        if (port < 0 || port > 0xFFFF || maxRenders < 1 || timeoutSeconds < 1) {
+            System.err.println(USAGE);
+            return null;
+        }
+        return new RenderServer(new InetSocketAddress(bindAddress, port), maxRenders, timeoutSeconds);
+    }
+
+    /**
+     * Starts listening. Requests are served until stop is called.
+     * @throws IOException if the address cannot be bound.
+     */
+    void start() throws IOException {
+        server = HttpServer.create(address, 0);
+        requestExecutor = BatchConverter.newIoExecutor(maxRenders * REQUESTS_PER_RENDER * THREADS_PER_REQUEST);
+        renderExecutor = Executors.newFixedThreadPool(maxRenders);
+        ioDeadlines = Executors.newSingleThreadScheduledExecutor();
+        server.setExecutor(requestExecutor);
+        server.createContext(RENDER_PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * Stops listening and cancels the running renders.
+     */
+    void stop() {
+        server.stop(0);
+        requestExecutor.shutdownNow();
+        renderExecutor.shutdownNow();
+        ioDeadlines.shutdownNow();
+    }
+
+    /**
+     * Getter for the address the server listens on, with the actual port if any free port was asked for.
+     * @return Bound address.
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Handles a request: reads the upload within the timeout, renders it on the render pool within the timeout and
+     * sends the result within the timeout. Requests beyond the limit are refused before their upload is read.
+     * @param exchange HTTP exchange.
+     */
+    private void handle(HttpExchange exchange) {
+        boolean admitted = requests.tryAcquire();
+        try {
+            Response response = admitted ? respond(exchange) : refuse(exchange,
+                    new RequestException(STATUS_TOO_MANY_REQUESTS, "Too many requests in progress"));
+            withinTimeout(() -> {
+                exchange.getResponseHeaders().set("Content-Type", response.contentType());
+                exchange.sendResponseHeaders(response.status(), response.body().length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(response.body());
+                body.flush();
+                if (response.status() != STATUS_OK) {
+                    // Closing the response drains the rest of the upload, which a stalled client holds up as long as
+                    // reading it; the interrupt drops the connection instead, freeing the thread at once.
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+                return null;
+            });
+        } catch (IOException | RequestException e) {
+            // The client went away, or it stalled past the timeout and the connection was closed.
+        } finally {
+            exchange.close();
+            if (admitted) {
+                requests.release();
+            }
+        }
+    }
+
+    /**
+     * Reads the upload within the timeout and renders it on the render pool within the timeout.
+     * @param exchange HTTP exchange.
+     * @return Rendered page or text, or the reason the request failed.
+     * @throws IOException if the upload cannot be read or timed out.
+     */
+    private Response respond(HttpExchange exchange) throws IOException {
+        try {
+            RenderOptions options = parseRequest(exchange);
+            byte[] upload = withinTimeout(() -> readUpload(exchange.getRequestBody()));
+            checkDimensions(upload);
+            String contentType = options.html() ? HTML_CONTENT_TYPE : TEXT_CONTENT_TYPE;
+            return new Response(STATUS_OK, contentType, renderWithinTimeout(upload, options));
+        } catch (RequestException e) {
+            return refuse(exchange, e);
+        }
+    }
+
+    /**
+     * Builds the answer to a failed request.
+     * @param exchange HTTP exchange.
+     * @param failure Reason the request failed.
+     * @return Response with the status and message of the failure.
+     */
+    private static Response refuse(HttpExchange exchange, RequestException failure) {
+        if (failure.status == STATUS_TOO_MANY_REQUESTS) {
+            exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+        }
+        return new Response(failure.status, TEXT_CONTENT_TYPE,
+                (failure.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks the method and path of a request and parses its query parameters.
+     * @param exchange HTTP exchange.
+     * @return Render options, unknown parameters being ignored.
+     * @throws RequestException if the request is not a valid render request.
+     */
+    private static RenderOptions parseRequest(HttpExchange exchange) throws RequestException {
+        if (!exchange.getRequestURI().getPath().equals(RENDER_PATH)) {
+            throw new RequestException(STATUS_NOT_FOUND, "Not found");
+        }
+        if (!exchange.getRequestMethod().equals(POST_METHOD)) {
+            throw new RequestException(STATUS_METHOD_NOT_ALLOWED, "Only POST is supported");
+        }
+        RenderOptions options = new RenderOptions();
+        try {
+            for (Map.Entry<String, String> parameter : parseQuery(exchange.getRequestURI().getRawQuery()).entrySet()) {
+                options.set(parameter.getKey(), parameter.getValue());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(STATUS_BAD_REQUEST, e.getMessage());
+        }
+        return options;
+    }
+
+    /**
+     * Splits a raw query string into its decoded parameters.
+     * @param rawQuery Raw query, or null.
+     * @return Parameters by name, the last value winning.
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Runs blocking connection I/O within the timeout. When the timeout passes, the running thread is interrupted,
+     * which closes the connection and makes the blocked read or write fail, so a stalled client cannot hold a
+     * request thread.
+     * @param io Connection I/O to run.
+     * @param <T> Result type.
+     * @return Result of the I/O.
+     * @throws RequestException if the I/O refuses the request.
+     * @throws IOException if the I/O fails or timed out.
+     */
+    private <T> T withinTimeout(ConnectionIo<T> io) throws RequestException, IOException {
+        Thread worker = Thread.currentThread();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ScheduledFuture<?> deadline = ioDeadlines.schedule(() -> {
+            synchronized (running) {
+                if (running.get()) {
+                    worker.interrupt();
+                }
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            return io.run();
+        } finally {
+            deadline.cancel(false);
+            synchronized (running) {
+                running.set(false);
+            }
+            // No interrupt can come after this point; clears one that arrived once the I/O was done.
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Reads a whole upload, refusing those larger than MAX_UPLOAD_BYTES.
+     * @param body Request body.
+     * @return Uploaded bytes.
+     * @throws RequestException if the upload is too large.
+     * @throws IOException if the upload cannot be read.
+     */
+    private static byte[] readUpload(InputStream body) throws RequestException, IOException {
+        byte[] upload = body.readNBytes(MAX_UPLOAD_BYTES + 1);
+        if (upload.length > MAX_UPLOAD_BYTES) {
+            throw new RequestException(STATUS_PAYLOAD_TOO_LARGE, "Image larger than " + MAX_UPLOAD_BYTES + " bytes");
+        }
+        return upload;
+    }
+
+    /**
+     * Reads the dimensions of an uploaded image, without decoding it, and refuses those whose decoded pixels
+     * would take too much of the heap. A render cannot be interrupted while it decodes, so such an upload would
+     * hold its render slot long after its timeout.
+     * @param upload Uploaded image file.
+     * @throws RequestException if the upload is not an image or is too large to decode.
+     */
+    private static void checkDimensions(byte[] upload) throws RequestException {
+        Dimension dimensions;
+        try {
+            dimensions = Image.dimensionsOf(new ByteArrayInputStream(upload));
+        } catch (IOException e) {
+            throw new RequestException(STATUS_UNSUPPORTED_MEDIA_TYPE, "Cannot decode image: " + e.getMessage());
+        }
+        if (Image.exceedsHeap(dimensions.width, dimensions.height)) {
+            throw new RequestException(STATUS_PAYLOAD_TOO_LARGE, "Image of " + dimensions.width + "x" +
+                    dimensions.height + " pixels too large to decode");
+        }
+    }
+
+    /**
+     * Renders on the render pool if a render slot is free, waiting at most the timeout. The slot is released when
+     * the render task ends, so a cancelled render still counts until it actually stops.
+     * @param upload Uploaded image file.
+     * @param options Render options.
+     * @return Rendered page or text.
+     * @throws RequestException if no slot is free, the render timed out or failed.
+     */
+    private byte[] renderWithinTimeout(byte[] upload, RenderOptions options) throws RequestException {
+        if (!renders.tryAcquire()) {
+            throw new RequestException(STATUS_TOO_MANY_REQUESTS, "Too many renders in progress");
+        }
+        Future<byte[]> result;
+        try {
+            result = renderExecutor.submit(() -> {
+                try {
+                    return render(upload, options);
+                } finally {
+                    renders.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            renders.release();
+            throw new RequestException(STATUS_UNAVAILABLE, "Server is stopping");
+        }
+        try {
+            return result.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new RequestException(STATUS_UNAVAILABLE, "Render timed out after " + timeoutSeconds + " s");
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RequestException(STATUS_UNAVAILABLE, "Server is stopping");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new RequestException(STATUS_UNSUPPORTED_MEDIA_TYPE,
+                        "Cannot decode image: " + e.getCause().getMessage());
+            }
+            throw new RequestException(STATUS_INTERNAL_ERROR, "Render failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Decodes an upload and renders it into memory. Rows stop being produced as soon as the render is cancelled.
+     * @param upload Uploaded image file.
+     * @param options Render options.
+     * @return Rendered page or text.
+     * @throws IOException if the image cannot be decoded.
+     */
+    private static byte[] render(byte[] upload, RenderOptions options) throws IOException {
+        Image img = Image.fromStream(new ByteArrayInputStream(upload));
+        BrightnessImgCharMatcher matcher = options.newMatcher(img, FONT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsciiOutput output = options.html() ? new HtmlAsciiOutput(Channels.newChannel(bytes), FONT) :
+                new ConsoleAsciiOutput(bytes);
+        matcher.chooseChars(options.charsInRow(img), options.charSet(),
+                new AsciiOutput() {
+                    @Override
+                    public void begin(int rows, int columns) {
+                        output.begin(rows, columns);
+                    }
+
+                    @Override
+                    public void outputRow(char[] row) {
+                        checkCancelled();
+                        output.outputRow(row);
+                    }
+
+                    @Override
+                    public void outputRow(char[] row, int[] colors) {
+                        checkCancelled();
+                        output.outputRow(row, colors);
+                    }
+
+                    @Override
+                    public void end() {
+                        output.end();
+                    }
+
+                    private void checkCancelled() {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new IllegalStateException("Render cancelled");
+                        }
+                    }
+                });
+        return bytes.toByteArray();
+    }
+}
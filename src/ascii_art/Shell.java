@@ -1,12 +1,17 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharSet;
+import ascii_art.img_to_char.RenderCache;
+import ascii_output.AsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.Image;
 
-import java.util.Arrays;
-import java.util.HashSet;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -19,7 +24,7 @@ public class Shell {
     private static final int SPACE_INT_ASCII = 32;
     private static final int INITIAL_CHARS_IN_ROW = 64;
     private static final int MIN_PIXELS_PER_CHAR = 2;
-    private static final Character[] DEFAULT_IMAGE_CHARACTERS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+    private static final char[] DEFAULT_IMAGE_CHARACTERS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
     private static final String START_SHELL = "<<<";
     private static final String EXIT_COMMAND = "exit";
     private static final String CHARS_COMMAND = "chars";
@@ -41,17 +46,58 @@ public class Shell {
     private static final Boolean DEFAULT_IS_RENDERED_TO_CONSOLE = false;
     private static final String FONT_HTML_RENDER = "Courier New";
     private static final String NAME_FILE_HTML = "out.html";
+    private static final String CACHE_COMMAND = "cache";
+    private static final String CACHE_STATS_MESSAGE = "Render cache hits: %d, misses: %d";
+    private static final long RENDER_CACHE_BYTES = 64L << 20;
+    private static final String QUALITY_COMMAND = "quality";
+    private static final String EXACT_QUALITY = "exact";
+    private static final int EXACT_SAMPLES_PER_CELL = 0;
+    private static final String QUALITY_SET_MESSAGE = "Quality set to ";
+    private static final String COLOR_COMMAND = "color";
+    private static final String COLOR_ON = "on";
+    private static final String COLOR_OFF = "off";
+    private static final String COLOR_SET_MESSAGE = "Color set to ";
+    private static final String MATCH_COMMAND = "match";
+    private static final String BRIGHTNESS_MATCH = "brightness";
+    private static final String SHAPE_MATCH = "shape";
+    private static final String MATCH_SET_MESSAGE = "Match set to ";
+
+    /**
+     * Key of a rendered image: the image, a snapshot of its characters, the number of characters in a row, the
+     * number of pixels sampled along each side of a sub image, whether it is colored and whether shapes are matched.
+     */
+    private record RenderKey(Image img, CharSet chars, int charsInRow, int samplesPerCell, boolean colored,
+                             boolean shapeMatching) {}
+
+    /**
+     * Rendered image: its characters, and their colors or null if it is not colored.
+     */
+    private record RenderedImage(char[][] chars, int[][] colors) {
+        /**
+         * Approximate size in bytes of the rendered image.
+         * @return Size in bytes.
+         */
+        long weight() {
+            return RenderCache.weightOf(chars) + (colors == null ? 0 : RenderCache.weightOf(colors));
+        }
+    }
 
 
-    private final HashSet<Character> imageCharacters;
+    private final CharSet imageCharacters;
     private final Scanner scanner;
     private final int minCharsInRow;
     private final int maxCharsInRow;
     private final HtmlAsciiOutput htmlRender;
     private final BrightnessImgCharMatcher brightnessImgCharMatcher;
     private final ConsoleAsciiOutput consoleRender;
+    private final Image img;
+    private final RenderCache<RenderKey, RenderedImage> renderCache =
+            new RenderCache<>(RenderedImage::weight, RENDER_CACHE_BYTES);
     private Boolean isRenderedToConsole;
     private Integer charsInRow;
+    private int samplesPerCell = EXACT_SAMPLES_PER_CELL;
+    private boolean colored;
+    private boolean shapeMatching;
 
 
     /**
@@ -59,54 +105,83 @@ public class Shell {
      * @param img Image.
      */
     public Shell(Image img) {
+        this(img, 1);
+    }
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param img Image.
+     * @param parallelism Number of threads used to convert the image.
+     */
+    public Shell(Image img, int parallelism) {
+        this.img = img;
         isRenderedToConsole = DEFAULT_IS_RENDERED_TO_CONSOLE;
         htmlRender = new HtmlAsciiOutput(NAME_FILE_HTML, FONT_HTML_RENDER);
         consoleRender = new ConsoleAsciiOutput();
         brightnessImgCharMatcher = new BrightnessImgCharMatcher(img, FONT_HTML_RENDER);
+        brightnessImgCharMatcher.setParallelism(parallelism);
         scanner = new Scanner(System.in);
-        imageCharacters = new HashSet<>(Arrays.asList(DEFAULT_IMAGE_CHARACTERS));
-        minCharsInRow = Math.max(1, img.getWidth()/img.getHeight());
+        imageCharacters = new CharSet(DEFAULT_IMAGE_CHARACTERS);
+        // At least one full row of square sub images must fit in the image height.
+        minCharsInRow = Math.max(1, (img.getWidth() + img.getHeight() - 1) / img.getHeight());
         maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
         charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
     }
 
     /**
-     * Static method that converts a HashSet of characters to a simple character array.
-     * @param hashSetToConvert HashSet of characters
-     * @return Character[].
+     * Method that takes care of receiving input from the user and exiting, on exit command or end of input.
      */
-    private static Character[] hashSetToArray(HashSet<Character> hashSetToConvert) {
-        Character[] arrayConversion = new Character[hashSetToConvert.size()];
-        int i = 0;
-        for(Character c: hashSetToConvert) {
-            arrayConversion[i] = c;
-            i++;
+    public void run() {
+        while(true) {
+            System.out.print(START_SHELL + " ");
+            if(!scanner.hasNextLine()) {
+                return;
+            }
+            String command = scanner.nextLine();
+            if(command.equals(EXIT_COMMAND)) {
+                return;
+            }
+            runCommand(parseCommand(command));
         }
-        return arrayConversion;
     }
 
     /**
-     * Method that takes care of receiving input from the user and exiting.
+     * Runs a script of commands, one per line, without prompting. The whole script is parsed before the first
+     * command runs, and execution stops at the first exit command.
+     * @param script Reader of the script.
+     * @throws IOException if the script cannot be read.
      */
-    public void run() {
-        System.out.print(START_SHELL + " ");
-        String command = scanner.nextLine();
-        if(!command.equals(EXIT_COMMAND)) {
-            runCommand(command.split(" "));
-            run();
+    public void runScript(BufferedReader script) throws IOException {
+        for(String[] command : compileScript(script)) {
+            if(command.length == 1 && command[0].equals(EXIT_COMMAND)) {
+                return;
+            }
+            runCommand(command);
         }
     }
 
     /**
-     * Concatenates the array of image characters to a String.
-     * @return Concatenated string.
+     * Parses every line of a script into its split command.
+     * @param script Reader of the script.
+     * @return Split commands, in order.
+     * @throws IOException if the script cannot be read.
      */
-    private String charsToString() {
-        String outputCharacters = "";
-        for(Character c: imageCharacters) {
-            outputCharacters += c + " ";
+    private static List<String[]> compileScript(BufferedReader script) throws IOException {
+        List<String[]> commands = new ArrayList<>();
+        String line;
+        while((line = script.readLine()) != null) {
+            commands.add(parseCommand(line));
         }
-        return outputCharacters;
+        return commands;
+    }
+
+    /**
+     * Splits a command line into its space separated words.
+     * @param command Command line.
+     * @return Split command.
+     */
+    private static String[] parseCommand(String command) {
+        return command.split(" ");
     }
 
     /**
@@ -117,11 +192,12 @@ public class Shell {
         // Handles empty command (when user just press enter)
         if(command.length == 0) {
             handleGeneralInvalidCommand();
+            return;
         }
         String firstCommand = command[0];
         switch(firstCommand) {
             case CHARS_COMMAND:
-                System.out.println(charsToString());
+                System.out.println(imageCharacters);
                 break;
             case ADD_COMMAND:
                 handleAddCommand(command);
@@ -138,6 +214,18 @@ public class Shell {
             case RENDER_COMMAND:
                 handleRenderCommand();
                 break;
+            case QUALITY_COMMAND:
+                handleQualityCommand(command);
+                break;
+            case COLOR_COMMAND:
+                handleColorCommand(command);
+                break;
+            case MATCH_COMMAND:
+                handleMatchCommand(command);
+                break;
+            case CACHE_COMMAND:
+                System.out.println(String.format(CACHE_STATS_MESSAGE, renderCache.getHits(), renderCache.getMisses()));
+                break;
             default:
                 handleGeneralInvalidCommand();
         }
@@ -145,15 +233,123 @@ public class Shell {
 
     /**
      * Private method that handles "render" command from input, by rendering the image in HTML or console format.
+     * Rows are streamed to the output as soon as they are matched, and the rendered image is cached so rendering
+     * the same characters at the same resolution again only outputs it.
      */
     private void handleRenderCommand() {
-        char[][] brightnessImg=brightnessImgCharMatcher.chooseChars(charsInRow, Shell.hashSetToArray(imageCharacters));
-        if(!isRenderedToConsole) {
-            htmlRender.output(brightnessImg);
+        AsciiOutput output = isRenderedToConsole ? consoleRender : htmlRender;
+        RenderKey key = new RenderKey(img, imageCharacters.copy(), charsInRow, samplesPerCell, colored,
+                shapeMatching);
+        RenderedImage cachedImage = renderCache.get(key);
+        if(cachedImage != null) {
+            if(cachedImage.colors() == null) {
+                output.output(cachedImage.chars());
+            }
+            else {
+                output.output(cachedImage.chars(), cachedImage.colors());
+            }
+            return;
         }
-        else {
-            consoleRender.output(brightnessImg);
+        brightnessImgCharMatcher.chooseChars(charsInRow, imageCharacters, new AsciiOutput() {
+            private char[][] rows;
+            private int[][] colorRows;
+            private int row = 0;
+
+            @Override
+            public void begin(int rowsCount, int columns) {
+                // Rows are only kept if the whole image can be cached.
+                long cellBytes = colored ? Character.BYTES + Integer.BYTES : Character.BYTES;
+                if(renderCache.fits(cellBytes * rowsCount * columns)) {
+                    rows = new char[rowsCount][];
+                    colorRows = colored ? new int[rowsCount][] : null;
+                }
+                output.begin(rowsCount, columns);
+            }
+
+            @Override
+            public void outputRow(char[] chars) {
+                if(rows != null) {
+                    rows[row++] = chars.clone();
+                }
+                output.outputRow(chars);
+            }
+
+            @Override
+            public void outputRow(char[] chars, int[] colors) {
+                if(rows != null) {
+                    colorRows[row] = colors.clone();
+                    rows[row++] = chars.clone();
+                }
+                output.outputRow(chars, colors);
+            }
+
+            @Override
+            public void end() {
+                output.end();
+                if(rows != null) {
+                    renderCache.put(key, new RenderedImage(rows, colorRows));
+                }
+            }
+        });
+    }
+
+    /**
+     * Private method that handles "color" command from input: "color on" renders every character in the average
+     * color of its sub image, "color off" renders characters only.
+     * @param command Split space array of the user input command.
+     */
+    private void handleColorCommand(String[] command) {
+        if(command.length != 2 || !(command[1].equals(COLOR_ON) || command[1].equals(COLOR_OFF))) {
+            handleGeneralInvalidCommand();
+            return;
+        }
+        colored = command[1].equals(COLOR_ON);
+        brightnessImgCharMatcher.setColored(colored);
+        System.out.println(COLOR_SET_MESSAGE + command[1]);
+    }
+
+    /**
+     * Private method that handles "match" command from input: "match shape" matches the shape of each sub image
+     * with the shapes of the characters, so edges are drawn with characters of the same direction, and
+     * "match brightness" matches its brightness only.
+     * @param command Split space array of the user input command.
+     */
+    private void handleMatchCommand(String[] command) {
+        if(command.length != 2 || !(command[1].equals(BRIGHTNESS_MATCH) || command[1].equals(SHAPE_MATCH))) {
+            handleGeneralInvalidCommand();
+            return;
+        }
+        shapeMatching = command[1].equals(SHAPE_MATCH);
+        brightnessImgCharMatcher.setShapeMatching(shapeMatching);
+        System.out.println(MATCH_SET_MESSAGE + command[1]);
+    }
+
+
+    /**
+     * Private method that handles "quality" command from input: "quality exact" uses every pixel of the image,
+     * "quality n" samples about n by n pixels of each sub image, for fast previews of large images.
+     * @param command Split space array of the user input command.
+     */
+    private void handleQualityCommand(String[] command) {
+        if(command.length != 2) {
+            handleGeneralInvalidCommand();
+            return;
+        }
+        int quality = EXACT_SAMPLES_PER_CELL;
+        if(!command[1].equals(EXACT_QUALITY)) {
+            try {
+                quality = Integer.parseInt(command[1]);
+            } catch(NumberFormatException e) {
+                quality = -1;
+            }
+            if(quality < 1) {
+                handleGeneralInvalidCommand();
+                return;
+            }
         }
+        samplesPerCell = quality;
+        brightnessImgCharMatcher.setQuality(samplesPerCell);
+        System.out.println(QUALITY_SET_MESSAGE + command[1]);
     }
 
     /**
@@ -286,7 +482,7 @@ public class Shell {
      * those who are in the range.
      */
     private void handleRemoveRangeCommand(Character start, Character end) {
-        addCharactersInRange(Math.min((int)start, (int)end), Math.max((int)start, (int)end));
+        removeCharactersInRange(Math.min((int)start, (int)end), Math.max((int)start, (int)end));
     }
 
     /**
@@ -310,9 +506,7 @@ public class Shell {
      * @param end Last integer casting character to remove.
      */
     private void removeCharactersInRange(Integer start, Integer end) {
-        for(int asciiInt = start; asciiInt <= end; asciiInt++) {
-            imageCharacters.remove((char)asciiInt);
-        }
+        imageCharacters.removeRange((char)(int)start, (char)(int)end);
     }
 
     /**
@@ -337,9 +531,7 @@ public class Shell {
      * @param end Last integer casting character to add.
      */
     private void addCharactersInRange(Integer start, Integer end) {
-        for(int asciiInt = start; asciiInt <= end; asciiInt++) {
-            imageCharacters.add((char)asciiInt);
-        }
+        imageCharacters.addRange((char)(int)start, (char)(int)end);
     }
 
     /**
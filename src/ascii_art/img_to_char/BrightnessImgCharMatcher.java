@@ -1,7 +1,13 @@
 package ascii_art.img_to_char;
 
+import ascii_output.AsciiOutput;
 import image.Image;
-import java.awt.*;
+import image.Luminance;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Class that takes care of determining the brightness of ASCII characters for a specific image.
@@ -10,10 +16,51 @@ public class BrightnessImgCharMatcher {
     private static final int RESOLUTION = 16;
     private static final double MIN_BRIGHTNESS = 0;
     private static final double MAX_BRIGHTNESS = 1;
-    private static final double MAXIMAL_RGB = 255;
-    private static final double RGB_TO_GRAYSCALE_RED = 0.2126;
-    private static final double RGB_TO_GRAYSCALE_GREEN = 0.7152;
-    private static final double RGB_TO_GRAYSCALE_BLUE = 0.0722;
+    private static final double MIDDLE_BRIGHTNESS = (MIN_BRIGHTNESS + MAX_BRIGHTNESS) / 2;
+    private static final int BANDS_PER_THREAD = 4;
+    private static final long BRIGHTNESS_CACHE_BYTES = 32L << 20;
+    private static final long COLOR_CACHE_BYTES = 16L << 20;
+    private static final long SHAPE_CACHE_BYTES = 16L << 20;
+    private static final int COLOR_COMPONENTS = 3;
+    private static final long SAMPLED_SOURCES_BYTES = 64L << 20;
+    /**
+     * Quality sampling every pixel of the image.
+     */
+    private static final int EXACT_SAMPLES_PER_CELL = 0;
+    /**
+     * The integral image is only built if it takes at most this fraction of the maximal heap size.
+     */
+    private static final int INTEGRAL_IMAGE_HEAP_FRACTION = 4;
+
+    /**
+     * Pass computing the brightness images: from the pyramid or the integral image for the brightness only, from
+     * the integral image (never the pyramid, whose blocks are the sub images) for the shapes, and by streaming
+     * the pixels for the colors. Sources round differently, so the images of different passes are kept apart, and
+     * a render always reads the same values as the previous render in the same mode.
+     */
+    private enum Pass { BRIGHTNESS, SHAPES, COLORS }
+
+    /**
+     * Key of a brightness image: the number of characters in a row, the subsampling factor of the image and the
+     * pass computing it.
+     */
+    private record BrightnessKey(int numCharsInRow, int factor, Pass pass) {}
+
+    /**
+     * Image the brightness is computed from, with either the pyramid level of the sub images, its integral image,
+     * or neither if the brightness is streamed, and its subsampling factor relative to the original image.
+     */
+    private record BrightnessSource(Image img, BrightnessPyramid pyramid, BrightnessIntegralImage integralImage,
+                                    int factor) {
+        /**
+         * Tells if the rows of the source must be converted in order: the pixels are streamed from an image that
+         * decodes them on demand, where concurrent row bands would keep evicting each other's decoded rows.
+         * @return True if the rows must be converted sequentially.
+         */
+        boolean readsRowsInOrder() {
+            return pyramid == null && integralImage == null && img.readsRowsInOrder();
+        }
+    }
 
     /**
      * Original image.
@@ -23,6 +70,76 @@ public class BrightnessImgCharMatcher {
      * Font style.
      */
     private final String font;
+    /**
+     * Integral image of the original image brightness, built on the first render unless the image is too large
+     * for the heap, in which case the brightness is computed by streaming the rows of the image.
+     */
+    private BrightnessIntegralImage integralImage;
+    /**
+     * Pyramid of the original image brightness, built on the first render whose sub images are blocks of a power
+     * of two pixels. Such renders, which stay so when the resolution is doubled or halved, do not need the
+     * integral image.
+     */
+    private BrightnessPyramid pyramid;
+    /**
+     * Brightness images of the sub images, by number of characters in a row and subsampling factor.
+     */
+    private final RenderCache<BrightnessKey, double[][]> brightnessCache =
+            new RenderCache<>(RenderCache::weightOf, BRIGHTNESS_CACHE_BYTES);
+    /**
+     * Average colors of the sub images, packed as 0xRRGGBB, by number of characters in a row and subsampling
+     * factor.
+     */
+    private final RenderCache<BrightnessKey, int[][]> colorCache =
+            new RenderCache<>(RenderCache::weightOf, COLOR_CACHE_BYTES);
+    /**
+     * Shapes of the sub images, as given by GlyphShapeTable.cellShape, by number of characters in a row and
+     * subsampling factor.
+     */
+    private final RenderCache<BrightnessKey, int[][]> shapeCache =
+            new RenderCache<>(RenderCache::weightOf, SHAPE_CACHE_BYTES);
+    /**
+     * Key and brightness, color and shape images of the last render, each null if it was not computed or did not
+     * fit in the heap, kept even when they are too large for the caches, so a render that only changes the char set
+     * matches the characters again without reading the image.
+     */
+    private BrightnessKey lastKey;
+    private double[][] lastBrightnessImage;
+    private int[][] lastColorImage;
+    private int[][] lastShapeImage;
+    /**
+     * Snapshot of the char set of the last render, its brightness to character table and its shape to character
+     * table (null until a render matches shapes).
+     */
+    private CharSet lastCharSet;
+    private CharBrightnessTable lastTable;
+    private GlyphShapeTable lastShapes;
+    /**
+     * Subsampled images used by the approximate quality, by subsampling factor.
+     */
+    private final RenderCache<Integer, BrightnessSource> sampledSources =
+            new RenderCache<>(source -> BrightnessIntegralImage.sizeOf(source.img()) +
+                    (long) source.img().getWidth() * source.img().getHeight() * Integer.BYTES, SAMPLED_SOURCES_BYTES);
+    /**
+     * Number of pixels sampled along each side of a sub image, or EXACT_SAMPLES_PER_CELL to use every pixel.
+     */
+    private int samplesPerCell = EXACT_SAMPLES_PER_CELL;
+    /**
+     * True to pass the average color of every sub image to the output along with its character.
+     */
+    private boolean colored;
+    /**
+     * True to match the shape of each sub image with the shapes of the glyphs, and not only its brightness.
+     */
+    private boolean shapeMatching;
+    /**
+     * Number of threads converting the image, 1 for a sequential conversion.
+     */
+    private int parallelism = 1;
+    /**
+     * Pool running the row bands when parallelism is greater than 1, created on first use.
+     */
+    private ForkJoinPool pool;
 
     /**
      * Class constructor. Inits instance of the class.
@@ -34,6 +151,54 @@ public class BrightnessImgCharMatcher {
         this.font = font;
     }
 
+    /**
+     * Sets the number of threads used by chooseChars. The output grid is split into bands of rows that are
+     * converted concurrently; the result is identical to the sequential conversion. Images decoded from the file
+     * in bands, when streamed, are still converted sequentially.
+     * @param parallelism Number of threads, 1 for a sequential conversion.
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1) throw new IllegalArgumentException();
+        if(parallelism != this.parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the quality / speed tradeoff of chooseChars. With an approximate quality, the brightness of each sub
+     * image is the average of a grid of about samplesPerCell by samplesPerCell of its pixels, taken from an image
+     * subsampled once per resolution (and decoded at the reduced size when the image is read in bands), so the
+     * cost of a render no longer grows with the image size.
+     * @param samplesPerCell Number of pixels sampled along each side of a sub image, 0 to use every pixel.
+     */
+    public void setQuality(int samplesPerCell) {
+        if(samplesPerCell < 0) throw new IllegalArgumentException();
+        this.samplesPerCell = samplesPerCell;
+    }
+
+    /**
+     * Sets the color mode of chooseChars. In color mode, the average RGB of each sub image is computed in the same
+     * pass over the pixels as its brightness, and every row is pushed to the output with the colors of its
+     * characters. The characters are the same in both modes.
+     * @param colored True to output colors, false to output characters only.
+     */
+    public void setColored(boolean colored) {
+        this.colored = colored;
+    }
+
+    /**
+     * Sets the matching mode of chooseChars. With shape matching, each sub image is split into 4 by 4 blocks whose
+     * brightness, compared with the whole sub image, gives a shape that is matched with the shapes of the glyphs,
+     * so edges and lines are drawn with characters of the same direction; the brightness then chooses between the
+     * characters of the closest shape. Sub images without enough contrast are matched by brightness only.
+     * @param shapeMatching True to match shapes, false to match brightness only.
+     */
+    public void setShapeMatching(boolean shapeMatching) {
+        this.shapeMatching = shapeMatching;
+    }
+
     /**
      * Converts the image to a binary Image of true or false representing black and white pixels respectively and
      * returns the number of true / white pixels on the binary image.
@@ -42,7 +207,7 @@ public class BrightnessImgCharMatcher {
      * @param font font.
      * @return Number of white / true pixels.
      */
-    private int whitePixelsForChar(char c, String font) {
+    private static int whitePixelsForChar(char c, String font) {
         int whiteCounter = 0;
         boolean[][] binaryImage = CharRenderer.getImg(c, BrightnessImgCharMatcher.RESOLUTION, font);
         for(int i = 0; i < binaryImage.length; i++) {
@@ -60,18 +225,22 @@ public class BrightnessImgCharMatcher {
      * @param number brightness value not normalized.
      * @return brightness value normalized.
      */
-    private double normalize(int number) {
+    private static double normalize(int number) {
         return number / Math.pow(RESOLUTION, 2);
     }
 
     /**
-     * Performs the linear stretching on the character.
+     * Performs the linear stretching on the character. When all the characters have the same brightness, as a
+     * single character does, there is no range to stretch and every character gets the middle brightness.
      * @param charBrightness Current character brightness.
      * @param minBrightness Min image brightness.
      * @param maxBrightness Max image brightness.
-     * @return Stretched brightness.
+     * @return Stretched brightness, in the range [0, 1].
      */
-    private double linearStretching(double charBrightness, double minBrightness, double maxBrightness) {
+    private static double linearStretching(double charBrightness, double minBrightness, double maxBrightness) {
+        if(maxBrightness == minBrightness) {
+            return MIDDLE_BRIGHTNESS;
+        }
         return (charBrightness - minBrightness) / (maxBrightness - minBrightness);
     }
 
@@ -80,7 +249,7 @@ public class BrightnessImgCharMatcher {
      * @param charArrBrightness Array representing the brightness of all characters of the ASCII image.
      * @return maximum brightness
      */
-    private double maxBrightness(double[] charArrBrightness) {
+    private static double maxBrightness(double[] charArrBrightness) {
         double maxCharBrightness = MIN_BRIGHTNESS;
         for(double charBrightness : charArrBrightness) {
             if(charBrightness >= maxCharBrightness) {
@@ -95,7 +264,7 @@ public class BrightnessImgCharMatcher {
      * @param charArrBrightness Array representing the brightness of each character of the ASCII image.
      * @return minimum brightness.
      */
-    private double minBrightness(double[] charArrBrightness) {
+    private static double minBrightness(double[] charArrBrightness) {
         double minCharBrightness = MAX_BRIGHTNESS;
         for(double charBrightness : charArrBrightness) {
             if(charBrightness <= minCharBrightness) {
@@ -112,96 +281,649 @@ public class BrightnessImgCharMatcher {
      * (we will use only those that are suitable and not necessarily all).
      * @return ASCII image.
      */
-    public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
-        int rows = (img.getHeight() / img.getWidth()) * numCharsInRow ;
-        double[][] brightnessImage = new double[rows][numCharsInRow];
-        imageToBrightness(img.getWidth() / numCharsInRow, brightnessImage);
-        double[] charBrightnessArray = new double[charSet.length];
+    public char[][] chooseChars(int numCharsInRow, CharSet charSet) {
+        char[][] asciiImage = new char[rows(numCharsInRow)][];
+        chooseChars(numCharsInRow, charSet, new AsciiOutput() {
+            int row = 0;
+
+            @Override
+            public void outputRow(char[] chars) {
+                asciiImage[row++] = chars.clone();
+            }
+        });
+        return asciiImage;
+    }
+
+    /**
+     * Method that performs the conversion of the image into characters, pushing each row to the output as soon as
+     * it is matched, so writing overlaps with the conversion and only a few rows are held in memory.
+     * The brightness image of the last resolution is kept, so when only the char set changed since the previous
+     * render, only the character table is built again and each cell is matched from its kept brightness.
+     * In color mode, the colors are computed by streaming the pixels, which gives the brightness on the way, so
+     * the image is read only once whether or not its integral image or pyramid exists. Shapes are computed along
+     * with the brightness too, from the integral image or the streamed pixels.
+     * @param numCharsInRow Number of characters will we draw in each row of the ASCII image.
+     * @param charSet The set of characters with which we would like to draw our picture
+     * (we will use only those that are suitable and not necessarily all).
+     * @param output Output receiving the rows of the ASCII image, in order.
+     */
+    public void chooseChars(int numCharsInRow, CharSet charSet, AsciiOutput output) {
+        int rows = rows(numCharsInRow);
+        Pass pass = colored ? Pass.COLORS : shapeMatching ? Pass.SHAPES : Pass.BRIGHTNESS;
+        BrightnessKey key = new BrightnessKey(numCharsInRow, samplingFactor(numCharsInRow), pass);
+        long cells = (long) rows * numCharsInRow;
+        // Kept images are reused as is, otherwise they are filled while converting if they can be kept. Colors and
+        // shapes are only computed along with the brightness, so missing ones mean computing the brightness again.
+        int[][] colorImage = null;
+        boolean computeColors = false;
+        if(colored) {
+            colorImage = key.equals(lastKey) && lastColorImage != null ? lastColorImage : colorCache.get(key);
+            computeColors = colorImage == null;
+        }
+        int[][] shapeImage = null;
+        boolean computeShapes = false;
+        if(shapeMatching) {
+            shapeImage = key.equals(lastKey) && lastShapeImage != null ? lastShapeImage : shapeCache.get(key);
+            computeShapes = shapeImage == null;
+        }
+        double[][] brightnessImage = computeColors || computeShapes ? null :
+                key.equals(lastKey) && lastBrightnessImage != null ? lastBrightnessImage : brightnessCache.get(key);
+        BrightnessSource source = null;
+        if(brightnessImage == null) {
+            source = pass == Pass.COLORS ? streamedSource(key.factor()) :
+                    brightnessSource(numCharsInRow, key.factor(), pass == Pass.BRIGHTNESS);
+            if(brightnessCache.fits(cells * Double.BYTES) || fitsInHeap(cells * Double.BYTES)) {
+                brightnessImage = new double[rows][numCharsInRow];
+            }
+            if(computeColors && (colorCache.fits(cells * Integer.BYTES) || fitsInHeap(cells * Integer.BYTES))) {
+                colorImage = new int[rows][numCharsInRow];
+            }
+            if(computeShapes && (shapeCache.fits(cells * Integer.BYTES) || fitsInHeap(cells * Integer.BYTES))) {
+                shapeImage = new int[rows][numCharsInRow];
+            }
+        }
+        CharTables tables = charTables(charSet);
+        output.begin(rows, numCharsInRow);
+        RowSources sources = new RowSources(brightnessImage, colorImage, shapeImage, source, computeColors,
+                computeShapes);
+        if(parallelism == 1 || (source != null && source.readsRowsInOrder())) {
+            double[] brightnessRowBuffer = new double[numCharsInRow];
+            int[] colorRowBuffer = colored ? new int[numCharsInRow] : null;
+            int[] shapeRowBuffer = shapeMatching ? new int[numCharsInRow] : null;
+            char[] asciiRow = new char[numCharsInRow];
+            for(int row = 0; row < rows; row++) {
+                double[] brightnessRow = rowOf(brightnessImage, row, brightnessRowBuffer);
+                int[] colorRow = rowOf(colorImage, row, colorRowBuffer);
+                int[] shapeRow = rowOf(shapeImage, row, shapeRowBuffer);
+                convertRow(row, sources, brightnessRow, colorRow, shapeRow, tables, asciiRow);
+                outputRow(output, asciiRow, colorRow);
+            }
+        }
+        else {
+            convertRowsInParallel(rows, numCharsInRow, tables, sources, output);
+        }
+        output.end();
+        if(!key.equals(lastKey)) {
+            lastKey = key;
+            lastBrightnessImage = null;
+            lastColorImage = null;
+            lastShapeImage = null;
+        }
+        if(brightnessImage != null) {
+            if(source != null) {
+                brightnessCache.put(key, brightnessImage);
+            }
+            lastBrightnessImage = brightnessImage;
+        }
+        if(computeColors && colorImage != null) {
+            colorCache.put(key, colorImage);
+            lastColorImage = colorImage;
+        }
+        if(computeShapes && shapeImage != null) {
+            shapeCache.put(key, shapeImage);
+            lastShapeImage = shapeImage;
+        }
+    }
+
+    /**
+     * Brightness to character table of a char set, and its shape to character table, null without shape matching.
+     */
+    private record CharTables(CharBrightnessTable brightness, GlyphShapeTable shapes) {}
+
+    /**
+     * Gives the tables of a char set, reusing those of the last render if its char set is the same.
+     * @param charSet Characters that can appear on the image.
+     * @return Tables.
+     */
+    private CharTables charTables(CharSet charSet) {
+        if(!charSet.equals(lastCharSet)) {
+            lastTable = charBrightnessTable(charSet, font);
+            lastShapes = null;
+            lastCharSet = charSet.copy();
+        }
+        if(shapeMatching && lastShapes == null) {
+            char[] chars = lastCharSet.toCharArray();
+            lastShapes = new GlyphShapeTable(chars, stretchedBrightness(chars, font), font);
+        }
+        return new CharTables(lastTable, shapeMatching ? lastShapes : null);
+    }
+
+    /**
+     * Computes the subsampling factor of a resolution: 1 for the exact quality, otherwise the largest factor that
+     * still samples samplesPerCell pixels along each side of a sub image.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @return Subsampling factor.
+     */
+    private int samplingFactor(int numCharsInRow) {
+        if(samplesPerCell == EXACT_SAMPLES_PER_CELL) {
+            return 1;
+        }
+        return Math.max(1, img.getWidth() / numCharsInRow / samplesPerCell);
+    }
+
+    /**
+     * Gives the image the brightness is computed from for a resolution and a subsampling factor. The original
+     * image is read from its pyramid when the sub images are blocks of a level, and from its integral image
+     * otherwise; either is built on first use unless it is too large for the heap.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @param factor Subsampling factor.
+     * @param allowPyramid False to never read from the pyramid.
+     * @return Brightness source.
+     */
+    private BrightnessSource brightnessSource(int numCharsInRow, int factor, boolean allowPyramid) {
+        if(factor == 1) {
+            if(allowPyramid && BrightnessPyramid.levelOf(img.getWidth(), numCharsInRow) > 0) {
+                if(pyramid == null && fitsInHeap(BrightnessPyramid.sizeOf(img))) {
+                    pyramid = new BrightnessPyramid(img);
+                }
+                if(pyramid != null) {
+                    return new BrightnessSource(img, pyramid, null, 1);
+                }
+            }
+            if(integralImage == null && integralImageFits(img)) {
+                integralImage = new BrightnessIntegralImage(img);
+            }
+            return new BrightnessSource(img, null, integralImage, 1);
+        }
+        BrightnessSource source = sampledSources.get(factor);
+        if(source == null) {
+            Image sampled = img.subsampled(factor);
+            source = new BrightnessSource(sampled, null, integralImageFits(sampled) ?
+                    new BrightnessIntegralImage(sampled) : null, factor);
+            sampledSources.put(factor, source);
+        }
+        return source;
+    }
+
+    /**
+     * Gives the image the brightness and the colors are streamed from, without building its integral image or
+     * pyramid: colors need a pass over the pixels anyway, which gives the brightness too.
+     * @param factor Subsampling factor.
+     * @return Brightness source.
+     */
+    private BrightnessSource streamedSource(int factor) {
+        if(factor == 1) {
+            return new BrightnessSource(img, null, null, 1);
+        }
+        BrightnessSource source = sampledSources.get(factor);
+        return new BrightnessSource(source == null ? img.subsampled(factor) : source.img(), null, null, factor);
+    }
+
+    /**
+     * Checks if the integral image of an image can be built: it must fit in an array and in the heap share, the
+     * brightness being streamed otherwise.
+     * @param img Image.
+     * @return True if the integral image can be built.
+     */
+    private static boolean integralImageFits(Image img) {
+        return BrightnessIntegralImage.fitsInArray(img) && fitsInHeap(BrightnessIntegralImage.sizeOf(img));
+    }
+
+    private static boolean fitsInHeap(long size) {
+        return size <= Runtime.getRuntime().maxMemory() / INTEGRAL_IMAGE_HEAP_FRACTION;
+    }
+
+    /**
+     * Computes the brightness of every sub image in a single streamed pass over the pixels, without building an
+     * integral image or caching anything, for images converted only once such as the frames of an animation.
+     * @param brightnessImage Resulting brightness image, of rows(numCharsInRow) rows of numCharsInRow values.
+     */
+    void streamBrightnessImage(double[][] brightnessImage) {
+        BrightnessSource source = streamedSource(1);
+        for(int row = 0; row < brightnessImage.length; row++) {
+            imageToBrightness(row, source, brightnessImage[row], null, null);
+        }
+    }
+
+    /**
+     * Where the rows of a render come from: the kept brightness, color and shape images, each null if it is not
+     * kept, and the source to compute the brightness from, null if brightnessImage is already filled. When
+     * computeColors is set, the source is streamed and fills the colors along with the brightness, and when
+     * computeShapes is set, it fills the shapes.
+     */
+    private record RowSources(double[][] brightnessImage, int[][] colorImage, int[][] shapeImage,
+                              BrightnessSource source, boolean computeColors, boolean computeShapes) {}
+
+    /**
+     * Gives a row of a kept image, or the buffer used in its place when the image is not kept.
+     * @param image Kept image, or null.
+     * @param row Row of the ASCII image.
+     * @param buffer Buffer, null if there is no such row at all.
+     * @return Row.
+     */
+    private static double[] rowOf(double[][] image, int row, double[] buffer) {
+        return image == null ? buffer : image[row];
+    }
+
+    private static int[] rowOf(int[][] image, int row, int[] buffer) {
+        return image == null ? buffer : image[row];
+    }
+
+    /**
+     * Computes the brightness, colors and shapes of a row of sub images if needed, and matches its characters.
+     * @param row Row of the ASCII image.
+     * @param sources Where the row comes from.
+     * @param brightnessRow Brightness of the row, filled if it is not kept yet.
+     * @param colorRow Colors of the row, filled if they are being computed, or null without colors.
+     * @param shapeRow Shapes of the row, filled if they are being computed, or null without shape matching.
+     * @param tables Character tables.
+     * @param asciiRow Resulting row of the ASCII image.
+     */
+    private void convertRow(int row, RowSources sources, double[] brightnessRow, int[] colorRow, int[] shapeRow,
+                            CharTables tables, char[] asciiRow) {
+        if(sources.source() != null) {
+            imageToBrightness(row, sources.source(), brightnessRow, sources.computeColors() ? colorRow : null,
+                    sources.computeShapes() ? shapeRow : null);
+        }
+        matchBrightnessWithChar(brightnessRow, shapeRow, tables, asciiRow);
+    }
+
+    private static void outputRow(AsciiOutput output, char[] asciiRow, int[] colorRow) {
+        if(colorRow == null) {
+            output.outputRow(asciiRow);
+        }
+        else {
+            output.outputRow(asciiRow, colorRow);
+        }
+    }
+
+    /**
+     * Computes the number of rows of the ASCII image. Sub images are square, of side
+     * img.getWidth() / numCharsInRow, and the last row holds the partial sub images of the bottom edge.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @return Number of rows.
+     */
+    int rows(int numCharsInRow) {
+        long height = (long) img.getHeight() * numCharsInRow;
+        return (int) ((height + img.getWidth() - 1) / img.getWidth());
+    }
+
+    /**
+     * Computes the first pixel of a sub image along either axis. Sub image boundaries are spread evenly over the
+     * width, so sub images of the same row or column differ by at most one pixel in size.
+     * @param index Column or row of the sub image.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @return First pixel, rounded down.
+     */
+    int cellStart(int index, int numCharsInRow) {
+        return (int) ((long) index * img.getWidth() / numCharsInRow);
+    }
+
+    /**
+     * Maps a pixel boundary of the original image to the first sampled pixel at or after it.
+     * @param pixel Pixel of the original image along either axis.
+     * @param factor Subsampling factor.
+     * @return Pixel of the subsampled image.
+     */
+    private static int toSample(int pixel, int factor) {
+        return (pixel + factor - 1) / factor;
+    }
+
+    /**
+     * Computes the brightness of every character of the char set, stretched to the range [0, 1], and builds the
+     * table matching a brightness with the closest character.
+     * It depends only on the characters and the font, so it can be shared by the conversions of several images.
+     * @param charSet Characters that can appear on the image.
+     * @param font Font style.
+     * @return Brightness to character table.
+     */
+    static CharBrightnessTable charBrightnessTable(CharSet charSet, String font) {
+        char[] chars = charSet.toCharArray();
+        return new CharBrightnessTable(chars, stretchedBrightness(chars, font));
+    }
+
+    /**
+     * Computes the brightness of every character, stretched to the range [0, 1].
+     * @param chars Characters that can appear on the image.
+     * @param font Font style.
+     * @return Brightness of each character, at the same index as in chars.
+     */
+    private static double[] stretchedBrightness(char[] chars, String font) {
+        double[] charBrightnessArray = new double[chars.length];
         // Computes brightness, normalize it.
-        for(int i = 0; i < charSet.length; i++) {
-            charBrightnessArray[i] = normalize(whitePixelsForChar(charSet[i], font));
+        for(int i = 0; i < chars.length; i++) {
+            charBrightnessArray[i] = normalize(whitePixelsForChar(chars[i], font));
         }
         // Computes maximum and minimum brightness of the whole image.
         double minBrightness = minBrightness(charBrightnessArray);
         double maxBrightness = maxBrightness(charBrightnessArray);
         // Linear stretch brightness of each char.
-        for(int i = 0; i < charSet.length; i++) {
+        for(int i = 0; i < chars.length; i++) {
             charBrightnessArray[i] = linearStretching(charBrightnessArray[i], minBrightness, maxBrightness);
         }
-        return matchBrightnessWithChar(brightnessImage, charSet, charBrightnessArray);
+        return charBrightnessArray;
     }
 
     /**
-     * Computes the resulting ASCII image of characters by matching the intensities of the original
+     * Splits the ASCII image into bands of rows and converts them concurrently on the pool. Every cell depends
+     * only on the image, so the result equals the sequential one. Bands are pushed to the output in order, and
+     * only a bounded window of bands is converted ahead of the output.
+     * @param rows Number of rows of the ASCII image.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @param tables Character tables.
+     * @param sources Where the rows come from.
+     * @param output Output receiving the rows of the ASCII image.
+     */
+    private void convertRowsInParallel(int rows, int numCharsInRow, CharTables tables, RowSources sources,
+                                       AsciiOutput output) {
+        if(pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        int bands = Math.min(rows, parallelism * BANDS_PER_THREAD);
+        int window = parallelism * 2;
+        ArrayDeque<Future<Band>> pending = new ArrayDeque<>(window);
+        int nextBand = 0;
+        try {
+            while(nextBand < bands || !pending.isEmpty()) {
+                while(nextBand < bands && pending.size() < window) {
+                    int fromRow = (int) ((long) rows * nextBand / bands);
+                    int toRow = (int) ((long) rows * (nextBand + 1) / bands);
+                    pending.add(pool.submit(() -> convertRows(fromRow, toRow, numCharsInRow, tables, sources)));
+                    nextBand++;
+                }
+                Band band = pending.remove().get();
+                for(int row = 0; row < band.asciiRows().length; row++) {
+                    outputRow(output, band.asciiRows()[row], band.colorRows() == null ? null : band.colorRows()[row]);
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for(Future<Band> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Converted band of rows: its characters, and their colors or null without colors.
+     */
+    private record Band(char[][] asciiRows, int[][] colorRows) {}
+
+    /**
+     * Computes the brightness and then the characters of the rows [fromRow, toRow) of the ASCII image.
+     * @param fromRow First row, inclusive.
+     * @param toRow Last row, exclusive.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @param tables Character tables.
+     * @param sources Where the rows come from.
+     * @return Rows of the ASCII image.
+     */
+    private Band convertRows(int fromRow, int toRow, int numCharsInRow, CharTables tables, RowSources sources) {
+        char[][] asciiRows = new char[toRow - fromRow][numCharsInRow];
+        int[][] colorRows = colored ? new int[toRow - fromRow][] : null;
+        double[] brightnessRowBuffer = new double[numCharsInRow];
+        int[] shapeRowBuffer = shapeMatching ? new int[numCharsInRow] : null;
+        for(int row = fromRow; row < toRow; row++) {
+            double[] brightnessRow = rowOf(sources.brightnessImage(), row, brightnessRowBuffer);
+            int[] colorRow = colored ? rowOf(sources.colorImage(), row, new int[numCharsInRow]) : null;
+            int[] shapeRow = rowOf(sources.shapeImage(), row, shapeRowBuffer);
+            convertRow(row, sources, brightnessRow, colorRow, shapeRow, tables, asciiRows[row - fromRow]);
+            if(colorRows != null) {
+                colorRows[row - fromRow] = colorRow;
+            }
+        }
+        return new Band(asciiRows, colorRows);
+    }
+
+    /**
+     * Computes a row of the resulting ASCII image by matching the intensities of the original
      * image with a character in charSet which intensity character is the closest.
-     * @param brightnessImage Image of brightnesses.
-     * @param charSet Array of all possible characters that can appear on our final image.
-     * @param charBrightnessArray Array which represents the mapping of the brightnesses for each of the characters.
-     * @return char[][] Array which is the ASCII image.
-     */
-    private char[][] matchBrightnessWithChar(double[][] brightnessImage,
-                                             Character[] charSet,
-                                             double[] charBrightnessArray) {
-        char[][] finalBrightnessImage = new char[brightnessImage.length][brightnessImage[0].length];
-        for(int i = 0; i < brightnessImage.length; i++) {
-            for(int j = 0; j < brightnessImage[0].length; j++) {
-                // Set the initial current char and difference brightness values.
-                char currBrightnessChar = charSet[0];
-                double currDifferenceBrightness = brightnessDistance(brightnessImage[i][j], charBrightnessArray[0]);
-                for(int k = 0; k < charSet.length; k++) {
-                    double tempDifferenceBrightness = brightnessDistance(brightnessImage[i][j], charBrightnessArray[k]);
-                    if(tempDifferenceBrightness < currDifferenceBrightness) {
-                        currDifferenceBrightness = tempDifferenceBrightness;
-                        currBrightnessChar = charSet[k];
-                    }
+     * With shape matching, sub images that have a shape are matched with the character of the closest shape.
+     * @param brightnessRow Row of the image of brightnesses.
+     * @param shapeRow Row of the image of shapes, or null without shape matching.
+     * @param tables Character tables of all possible characters that can appear on our final image.
+     * @param asciiRow Resulting row of the ASCII image.
+     */
+    private void matchBrightnessWithChar(double[] brightnessRow, int[] shapeRow, CharTables tables,
+                                         char[] asciiRow) {
+        for(int j = 0; j < brightnessRow.length; j++) {
+            // Plugin final character for each sub image section.
+            if(shapeRow != null && shapeRow[j] != GlyphShapeTable.NO_SHAPE) {
+                asciiRow[j] = tables.shapes().closestChar(shapeRow[j], brightnessRow[j]);
+            }
+            else {
+                asciiRow[j] = tables.brightness().closestChar(brightnessRow[j]);
+            }
+        }
+    }
+
+    /**
+     * Performs the conversion of the subImages of a row to brightness values. The row is copied from a level of
+     * the pyramid, or each value is read from the integral image in O(1), so the cost is proportional to the number
+     * of sub images and not to the number of pixels. Otherwise, the rows of pixels of the sub images are streamed
+     * one at a time.
+     * Sub images of the last row are clipped to the bottom of the image. With a subsampled source, a sub image
+     * covers the sampled pixels inside it; a last row thinner than the subsampling factor uses the last sampled row.
+     * @param row Row of the ASCII image.
+     * @param source Source of the brightness.
+     * @param brightnessRow Resulting row of the brightness image.
+     * @param colorRow Resulting average colors of the row, or null; only a streamed source, without integral
+     *                 image or pyramid, computes them.
+     * @param shapeRow Resulting shapes of the row, or null; a source with a pyramid does not compute them.
+     */
+    private void imageToBrightness(int row, BrightnessSource source, double[] brightnessRow, int[] colorRow,
+                                   int[] shapeRow) {
+        int numCharsInRow = brightnessRow.length;
+        if(source.pyramid() != null) {
+            source.pyramid().brightnessRow(BrightnessPyramid.levelOf(img.getWidth(), numCharsInRow), row, brightnessRow);
+            return;
+        }
+        int factor = source.factor();
+        int y0 = Math.min(toSample(cellStart(row, numCharsInRow), factor), source.img().getHeight() - 1);
+        int y1 = Math.max(y0 + 1, toSample(Math.min(img.getHeight(), cellStart(row + 1, numCharsInRow)), factor));
+        if(source.integralImage() == null) {
+            streamedImageToBrightness(source, y0, y1, brightnessRow, colorRow, shapeRow);
+            return;
+        }
+        double[] blockBrightness = shapeRow == null ? null : new double[GlyphShapeTable.SIDE * GlyphShapeTable.SIDE];
+        for(int col = 0; col < numCharsInRow; col++) {
+            int x0 = toSample(cellStart(col, numCharsInRow), factor);
+            int x1 = toSample(cellStart(col + 1, numCharsInRow), factor);
+            brightnessRow[col] = source.integralImage().averageBrightness(x0, y0, x1, y1);
+            if(shapeRow != null) {
+                shapeRow[col] = integralCellShape(source.integralImage(), x0, y0, x1, y1, brightnessRow[col],
+                        blockBrightness);
+            }
+        }
+    }
+
+    /**
+     * Computes the shape of a sub image from the integral image, in O(1) per block.
+     * @param integralImage Integral image of the source.
+     * @param x0 Left column of the sub image, inclusive.
+     * @param y0 Top row of the sub image, inclusive.
+     * @param x1 Right column of the sub image, exclusive.
+     * @param y1 Bottom row of the sub image, exclusive.
+     * @param brightness Brightness of the sub image.
+     * @param blockBrightness Buffer receiving the brightness of the blocks.
+     * @return Shape, or NO_SHAPE if the sub image is smaller than a pixel per block or too flat.
+     */
+    private static int integralCellShape(BrightnessIntegralImage integralImage, int x0, int y0, int x1, int y1,
+                                         double brightness, double[] blockBrightness) {
+        int side = GlyphShapeTable.SIDE;
+        if(x1 - x0 < side || y1 - y0 < side) {
+            return GlyphShapeTable.NO_SHAPE;
+        }
+        for(int blockY = 0; blockY < side; blockY++) {
+            for(int blockX = 0; blockX < side; blockX++) {
+                blockBrightness[blockY * side + blockX] = integralImage.averageBrightness(
+                        GlyphShapeTable.blockStart(x0, x1, blockX), GlyphShapeTable.blockStart(y0, y1, blockY),
+                        GlyphShapeTable.blockStart(x0, x1, blockX + 1), GlyphShapeTable.blockStart(y0, y1, blockY + 1));
+            }
+        }
+        return GlyphShapeTable.cellShape(blockBrightness, brightness);
+    }
+
+    /**
+     * Computes the brightness of a row of sub images by summing the grayscale values of their pixels, reading
+     * the image one row of pixels at a time, so memory does not depend on the height of the image.
+     * The red, green and blue values, and the grayscale values of the blocks of each sub image, are summed from
+     * the same rows of pixels when colors or shapes are requested.
+     * @param source Source of the brightness.
+     * @param y0 First row of pixels of the source, inclusive.
+     * @param y1 Last row of pixels of the source, exclusive.
+     * @param brightnessRow Resulting row of the brightness image.
+     * @param colorRow Resulting average colors of the row, packed as 0xRRGGBB, or null.
+     * @param shapeRow Resulting shapes of the row, or null.
+     */
+    private void streamedImageToBrightness(BrightnessSource source, int y0, int y1, double[] brightnessRow,
+                                           int[] colorRow, int[] shapeRow) {
+        int numCharsInRow = brightnessRow.length;
+        int factor = source.factor();
+        int[] pixels = new int[source.img().getWidth()];
+        double[] grayRow = new double[pixels.length];
+        double[] graySums = new double[numCharsInRow];
+        long[] colorSums = colorRow == null ? null : new long[numCharsInRow * COLOR_COMPONENTS];
+        int side = GlyphShapeTable.SIDE;
+        // Rows thinner than a pixel per block have no shape, and neither have such columns.
+        double[] blockSums = shapeRow == null || y1 - y0 < side ? null : new double[numCharsInRow * side * side];
+        int blockY = 0;
+        for(int y = y0; y < y1; y++) {
+            source.img().getRowRGB(y, pixels);
+            Luminance.convertRow(pixels, pixels.length, grayRow);
+            while(y >= GlyphShapeTable.blockStart(y0, y1, blockY + 1)) {
+                blockY++;
+            }
+            for(int col = 0; col < numCharsInRow; col++) {
+                int start = toSample(cellStart(col, numCharsInRow), factor);
+                int end = toSample(cellStart(col + 1, numCharsInRow), factor);
+                double graySum = 0;
+                for(int x = start; x < end; x++) {
+                    graySum += grayRow[x];
+                }
+                graySums[col] += graySum;
+                if(colorSums != null) {
+                    sumColors(pixels, start, end, colorSums, col * COLOR_COMPONENTS);
+                }
+                if(blockSums != null && end - start >= side) {
+                    sumBlocks(grayRow, start, end, blockSums, (col * side + blockY) * side);
                 }
-                // Plugin final character for each sub image section.
-                finalBrightnessImage[i][j] = currBrightnessChar;
             }
         }
-        return finalBrightnessImage;
+        for(int col = 0; col < numCharsInRow; col++) {
+            int cellWidth = toSample(cellStart(col + 1, numCharsInRow), factor) -
+                    toSample(cellStart(col, numCharsInRow), factor);
+            long pixelCount = (long) cellWidth * (y1 - y0);
+            brightnessRow[col] = BrightnessIntegralImage.averageBrightness(graySums[col], pixelCount);
+            if(colorRow != null) {
+                colorRow[col] = averageColor(colorSums, col * COLOR_COMPONENTS, pixelCount);
+            }
+            if(shapeRow != null) {
+                int start = toSample(cellStart(col, numCharsInRow), factor);
+                shapeRow[col] = blockSums == null || cellWidth < side ? GlyphShapeTable.NO_SHAPE :
+                        streamedCellShape(blockSums, col * side * side, start, start + cellWidth, y0, y1,
+                                brightnessRow[col]);
+            }
+        }
     }
 
     /**
-     * Calculates the difference value between two brightnesses.
-     * @param brightnessValue1 Brightness value.
-     * @param brightnessValue2 Another brightness value.
-     * @return Difference brightness value.
+     * Adds the grayscale values of a row of pixels of a sub image to the sums of the blocks they fall in.
+     * @param grayRow Grayscale values of the row of pixels.
+     * @param start First pixel of the sub image, inclusive.
+     * @param end Last pixel of the sub image, exclusive.
+     * @param blockSums Grayscale sums of the blocks of every sub image of the row.
+     * @param offset Index of the sum of the first block of the sub image in the row of blocks of the pixels.
      */
-    private double brightnessDistance(double brightnessValue1, double brightnessValue2) {
-        return Math.abs(brightnessValue1 - brightnessValue2);
+    private static void sumBlocks(double[] grayRow, int start, int end, double[] blockSums, int offset) {
+        for(int blockX = 0; blockX < GlyphShapeTable.SIDE; blockX++) {
+            double graySum = 0;
+            for(int x = GlyphShapeTable.blockStart(start, end, blockX),
+                blockEnd = GlyphShapeTable.blockStart(start, end, blockX + 1); x < blockEnd; x++) {
+                graySum += grayRow[x];
+            }
+            blockSums[offset + blockX] += graySum;
+        }
+    }
+
+    /**
+     * Computes the shape of a sub image from the grayscale sums of its blocks.
+     * @param blockSums Grayscale sums of the blocks of every sub image of the row.
+     * @param offset Index of the sum of the first block of the sub image.
+     * @param x0 Left column of the sub image, inclusive.
+     * @param x1 Right column of the sub image, exclusive.
+     * @param y0 Top row of the sub image, inclusive.
+     * @param y1 Bottom row of the sub image, exclusive.
+     * @param brightness Brightness of the sub image.
+     * @return Shape, or NO_SHAPE if the sub image is too flat.
+     */
+    private static int streamedCellShape(double[] blockSums, int offset, int x0, int x1, int y0, int y1,
+                                         double brightness) {
+        int side = GlyphShapeTable.SIDE;
+        double[] blockBrightness = new double[side * side];
+        for(int blockY = 0; blockY < side; blockY++) {
+            long blockHeight = GlyphShapeTable.blockStart(y0, y1, blockY + 1) -
+                    GlyphShapeTable.blockStart(y0, y1, blockY);
+            for(int blockX = 0; blockX < side; blockX++) {
+                long blockWidth = GlyphShapeTable.blockStart(x0, x1, blockX + 1) -
+                        GlyphShapeTable.blockStart(x0, x1, blockX);
+                int block = blockY * side + blockX;
+                blockBrightness[block] = BrightnessIntegralImage.averageBrightness(blockSums[offset + block],
+                        blockWidth * blockHeight);
+            }
+        }
+        return GlyphShapeTable.cellShape(blockBrightness, brightness);
     }
 
     /**
-     * Performs the conversion of each subImage to a brightness value.
-     * @param pixels Total number of pixels of each subImage.
-     * @param brightnessImage 2D dimensional array representing the brightness resulted image.
+     * Adds the red, green and blue values of a run of pixels to the sums of a sub image.
+     * @param pixels Row of packed ARGB pixels.
+     * @param start First pixel, inclusive.
+     * @param end Last pixel, exclusive.
+     * @param colorSums Red, green and blue sums of every sub image of the row.
+     * @param offset Index of the red sum of the sub image.
      */
-    private void imageToBrightness(int pixels, double[][] brightnessImage) {
-        int count = 0;
-        int cols = brightnessImage[0].length;
-        for(Image subImage: img.imageIntoSubImages(pixels)) {
-            brightnessImage[count / cols][count % cols] = getAverageBrightness(subImage);
-            count++;
+    private static void sumColors(int[] pixels, int start, int end, long[] colorSums, int offset) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        for(int x = start; x < end; x++) {
+            int rgb = pixels[x];
+            red += (rgb >> 16) & 0xFF;
+            green += (rgb >> 8) & 0xFF;
+            blue += rgb & 0xFF;
         }
+        colorSums[offset] += red;
+        colorSums[offset + 1] += green;
+        colorSums[offset + 2] += blue;
     }
 
     /**
-     * Method that performs the sub image brightness by converting the RGB pixels to grayscale, and then calculating
-     * the average respect all the pixels.
-     * @param img Sub image.
-     * @return Brightness value.
+     * Averages the color sums of a sub image, rounding each component to the nearest value.
+     * @param colorSums Red, green and blue sums of every sub image of the row.
+     * @param offset Index of the red sum of the sub image.
+     * @param pixelCount Number of pixels of the sub image, at least 1.
+     * @return Average color, packed as 0xRRGGBB.
      */
-    private double getAverageBrightness(Image img) {
-        int totalPixels = 0;
-        double grayPixel = 0;
-        for(Color pixel: img.pixels()) {
-            double redSignal = pixel.getRed() * RGB_TO_GRAYSCALE_RED;
-            double greenSignal = pixel.getGreen() * RGB_TO_GRAYSCALE_GREEN;
-            double blueSignal = pixel.getBlue() * RGB_TO_GRAYSCALE_BLUE;
-            grayPixel += redSignal + greenSignal + blueSignal;
-            totalPixels++;
+    private static int averageColor(long[] colorSums, int offset, long pixelCount) {
+        int color = 0;
+        for(int component = 0; component < COLOR_COMPONENTS; component++) {
+            color = (color << 8) | (int) ((colorSums[offset + component] + pixelCount / 2) / pixelCount);
         }
-        return (grayPixel / totalPixels) / MAXIMAL_RGB;
+        return color;
     }
 }
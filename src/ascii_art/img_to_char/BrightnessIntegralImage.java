@@ -0,0 +1,118 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.Luminance;
+
+/**
+ * Package-private summed-area table (integral image) of the grayscale values of an image.
+ * It is built once in a single pass over the pixels, after which the average brightness of any
+ * rectangle of the image is answered in O(1), independently of the rectangle size.
+ */
+class BrightnessIntegralImage {
+    private static final double MAXIMAL_RGB = 255;
+    /**
+     * Largest array length every JVM can allocate.
+     */
+    private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+    /**
+     * sums[y * (width + 1) + x] holds the grayscale sum of all pixels above and to the left of (x, y).
+     * The first row and column are zeros so that no bound checks are needed on lookups.
+     */
+    private final double[] sums;
+    private final int width;
+    private final int height;
+
+    /**
+     * Class constructor. Builds the table from the pixels of the image. Since every index is below the number of
+     * entries, which fits in an int, lookups cannot overflow.
+     * @param img Original image, for which fitsInArray is true.
+     * @throws ArithmeticException if the table has more entries than an array can hold.
+     */
+    BrightnessIntegralImage(Image img) {
+        this.width = img.getWidth();
+        this.height = img.getHeight();
+        int stride = width + 1;
+        sums = new double[Math.toIntExact(entriesOf(img))];
+        int[] row = new int[width];
+        double[] grayRow = new double[width];
+        for(int y = 0; y < height; y++) {
+            img.getRowRGB(y, row);
+            Luminance.convertRow(row, width, grayRow);
+            double rowSum = 0;
+            int above = y * stride + 1;
+            int current = above + stride;
+            for(int x = 0; x < width; x++) {
+                rowSum += grayRow[x];
+                sums[current + x] = sums[above + x] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Computes the average brightness of the rectangle [x0, x1) x [y0, y1) in O(1).
+     * @param x0 Left column, inclusive.
+     * @param y0 Top row, inclusive.
+     * @param x1 Right column, exclusive.
+     * @param y1 Bottom row, exclusive.
+     * @return Brightness value normalized to [0, 1].
+     */
+    double averageBrightness(int x0, int y0, int x1, int y1) {
+        int stride = width + 1;
+        double sum = sums[y1 * stride + x1] - sums[y0 * stride + x1] - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+        return averageBrightness(sum, (long) (x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * Converts a sum of grayscale values to an average brightness.
+     * @param graySum Sum of the grayscale values of the pixels.
+     * @param pixels Number of pixels.
+     * @return Brightness value normalized to [0, 1].
+     */
+    static double averageBrightness(double graySum, long pixels) {
+        return (graySum / pixels) / MAXIMAL_RGB;
+    }
+
+    /**
+     * Computes the number of entries of the table of an image.
+     * @param img Image.
+     * @return Number of entries.
+     */
+    private static long entriesOf(Image img) {
+        return Math.multiplyExact((long) img.getWidth() + 1, (long) img.getHeight() + 1);
+    }
+
+    /**
+     * Checks if the table of an image fits in a single array, whatever the size of the heap.
+     * @param img Image.
+     * @return True if the table can be built.
+     */
+    static boolean fitsInArray(Image img) {
+        return entriesOf(img) <= MAX_ENTRIES;
+    }
+
+    /**
+     * Computes the size in bytes of the table of an image.
+     * @param img Image.
+     * @return Size in bytes.
+     */
+    static long sizeOf(Image img) {
+        return entriesOf(img) * Double.BYTES;
+    }
+
+    /**
+     * Getter for the width of the table's image.
+     * @return Image width.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter for the height of the table's image.
+     * @return Image height.
+     */
+    int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,177 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.Luminance;
+
+/**
+ * Package-private mip-map pyramid of the grayscale values of an image. Level k holds the average of every
+ * 2^k by 2^k block of pixels, so an ASCII image whose sub images are such blocks is read directly from one level,
+ * in O(1) per sub image. Blocks at the right and bottom edges are averaged over the pixels they cover, exactly
+ * as the clipped sub images of the last row and column. Level 0, a single pixel per sub image, is never rendered
+ * and is not kept, so all the levels together take a third of the pixels of the image, stored as floats.
+ */
+class BrightnessPyramid {
+    private static final double MAXIMAL_RGB = 255;
+
+    /**
+     * levels[k - 1][y * levelWidth(k) + x] holds the average grayscale value of block (x, y) of level k.
+     */
+    private final float[][] levels;
+    private final int width;
+    private final int height;
+
+    /**
+     * Class constructor. Builds every level from the pixels of the image, in a single pass over them.
+     * @param img Original image.
+     */
+    BrightnessPyramid(Image img) {
+        width = img.getWidth();
+        height = img.getHeight();
+        int levelCount = 1;
+        while(levelSize(Math.max(width, height), levelCount) > 1) {
+            levelCount++;
+        }
+        levels = new float[levelCount][];
+        levels[0] = firstLevel(img);
+        for(int level = 2; level <= levelCount; level++) {
+            levels[level - 1] = nextLevel(level);
+        }
+    }
+
+    /**
+     * Averages every 2 by 2 block of pixels of the image, reading two rows of pixels at a time.
+     * @param img Original image.
+     * @return Level 1.
+     */
+    private float[] firstLevel(Image img) {
+        int levelWidth = levelSize(width, 1);
+        float[] level = new float[levelWidth * levelSize(height, 1)];
+        int[] pixels = new int[width];
+        double[] top = new double[width];
+        double[] bottom = new double[width];
+        for(int y = 0; y < height; y += 2) {
+            img.getRowRGB(y, pixels);
+            Luminance.convertRow(pixels, width, top);
+            int rows = Math.min(2, height - y);
+            if(rows == 2) {
+                img.getRowRGB(y + 1, pixels);
+                Luminance.convertRow(pixels, width, bottom);
+            }
+            int levelRow = (y / 2) * levelWidth;
+            for(int x = 0; x < width; x += 2) {
+                int columns = Math.min(2, width - x);
+                double graySum = top[x];
+                if(columns == 2) {
+                    graySum += top[x + 1];
+                }
+                if(rows == 2) {
+                    graySum += bottom[x];
+                    if(columns == 2) {
+                        graySum += bottom[x + 1];
+                    }
+                }
+                level[levelRow + x / 2] = (float) (graySum / (rows * columns));
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Averages every 2 by 2 block of the previous level, weighting each block by the number of pixels it covers.
+     * @param level Level to build, at least 2.
+     * @return Level.
+     */
+    private float[] nextLevel(int level) {
+        float[] previous = levels[level - 2];
+        int previousWidth = levelSize(width, level - 1);
+        int previousHeight = levelSize(height, level - 1);
+        int levelWidth = levelSize(width, level);
+        float[] current = new float[levelWidth * levelSize(height, level)];
+        for(int y = 0; y < previousHeight; y += 2) {
+            for(int x = 0; x < previousWidth; x += 2) {
+                double graySum = 0;
+                long pixels = 0;
+                for(int childY = y; childY < Math.min(y + 2, previousHeight); childY++) {
+                    for(int childX = x; childX < Math.min(x + 2, previousWidth); childX++) {
+                        long childPixels = (long) blockPixels(childX, width, level - 1) *
+                                blockPixels(childY, height, level - 1);
+                        graySum += previous[childY * previousWidth + childX] * (double) childPixels;
+                        pixels += childPixels;
+                    }
+                }
+                current[(y / 2) * levelWidth + x / 2] = (float) (graySum / pixels);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Computes the number of blocks of a level along an axis.
+     * @param size Size of the image along the axis.
+     * @param level Level.
+     * @return Number of blocks, rounded up.
+     */
+    private static int levelSize(int size, int level) {
+        return (int) (((long) size + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * Computes the number of pixels a block of a level covers along an axis, which is smaller at the edge.
+     * @param index Index of the block along the axis.
+     * @param size Size of the image along the axis.
+     * @param level Level.
+     * @return Number of pixels.
+     */
+    private static int blockPixels(int index, int size, int level) {
+        return (int) Math.min(1L << level, size - ((long) index << level));
+    }
+
+    /**
+     * Finds the level whose blocks are the sub images of an ASCII image, which requires the sub image side
+     * width / numCharsInRow to be an integral power of two, at least 2.
+     * @param width Width of the image.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @return Level, or 0 if no level matches the sub images.
+     */
+    static int levelOf(int width, int numCharsInRow) {
+        if(width % numCharsInRow != 0) {
+            return 0;
+        }
+        int side = width / numCharsInRow;
+        if(side < 2 || Integer.bitCount(side) != 1) {
+            return 0;
+        }
+        return Integer.numberOfTrailingZeros(side);
+    }
+
+    /**
+     * Reads a row of brightness values of a level.
+     * @param level Level, as given by levelOf.
+     * @param y Row of the level.
+     * @param brightnessRow Resulting brightness values normalized to [0, 1], levelSize(width, level) long.
+     */
+    void brightnessRow(int level, int y, double[] brightnessRow) {
+        float[] values = levels[level - 1];
+        int rowStart = y * brightnessRow.length;
+        for(int x = 0; x < brightnessRow.length; x++) {
+            brightnessRow[x] = values[rowStart + x] / MAXIMAL_RGB;
+        }
+    }
+
+    /**
+     * Computes the size in bytes of the pyramid of an image.
+     * @param img Image.
+     * @return Size in bytes, about a third of the pixels of the image as floats.
+     */
+    static long sizeOf(Image img) {
+        long size = 0;
+        int levelWidth = img.getWidth();
+        int levelHeight = img.getHeight();
+        do {
+            levelWidth = (levelWidth + 1) / 2;
+            levelHeight = (levelHeight + 1) / 2;
+            size += (long) levelWidth * levelHeight * Float.BYTES;
+        } while(levelWidth > 1 || levelHeight > 1);
+        return size;
+    }
+}
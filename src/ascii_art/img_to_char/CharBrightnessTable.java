@@ -0,0 +1,76 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Package-private lookup structure that matches a brightness value with the character of the closest brightness.
+ * Characters are kept sorted by brightness, and a quantized table maps each brightness level to the position of
+ * the darkest candidate, so a match costs O(1) regardless of the size of the character set.
+ * Ties are resolved deterministically: between characters of equal brightness the smallest character is kept, and
+ * when a value is equally distant from two characters the darker one is chosen.
+ */
+class CharBrightnessTable {
+    private static final int LEVELS = 4096;
+
+    private final char[] sortedChars;
+    private final double[] sortedBrightness;
+    /**
+     * levelStart[q] is the index of the last sorted brightness that is at most q / LEVELS (0 if there is none).
+     */
+    private final int[] levelStart;
+
+    /**
+     * Class constructor. Builds the table.
+     * @param charSet Characters that can appear on the image.
+     * @param charBrightnessArray Brightness of each character, at the same index as in charSet.
+     */
+    CharBrightnessTable(char[] charSet, double[] charBrightnessArray) {
+        Integer[] order = new Integer[charSet.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> charBrightnessArray[i])
+                .thenComparingInt(i -> charSet[i]));
+        // Keeps only the smallest character of every brightness value.
+        char[] chars = new char[order.length];
+        double[] brightness = new double[order.length];
+        int size = 0;
+        for(int i : order) {
+            if(size == 0 || Double.compare(brightness[size - 1], charBrightnessArray[i]) != 0) {
+                chars[size] = charSet[i];
+                brightness[size] = charBrightnessArray[i];
+                size++;
+            }
+        }
+        sortedChars = Arrays.copyOf(chars, size);
+        sortedBrightness = Arrays.copyOf(brightness, size);
+        levelStart = new int[LEVELS];
+        int index = 0;
+        for(int level = 0; level < LEVELS; level++) {
+            double levelBrightness = (double) level / LEVELS;
+            while(index + 1 < size && sortedBrightness[index + 1] <= levelBrightness) {
+                index++;
+            }
+            levelStart[level] = index;
+        }
+    }
+
+    /**
+     * Finds the character whose brightness is the closest to the given brightness.
+     * @param brightness Brightness value in the range [0, 1].
+     * @return Closest character.
+     */
+    char closestChar(double brightness) {
+        int level = Math.min(LEVELS - 1, Math.max(0, (int) (brightness * LEVELS)));
+        int index = levelStart[level];
+        while(index + 1 < sortedBrightness.length && sortedBrightness[index + 1] <= brightness) {
+            index++;
+        }
+        if(index + 1 < sortedBrightness.length &&
+                Math.abs(sortedBrightness[index + 1] - brightness) < Math.abs(brightness - sortedBrightness[index])) {
+            index++;
+        }
+        return sortedChars[index];
+    }
+}
@@ -2,6 +2,13 @@ package ascii_art.img_to_char;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Inspired by, and partly copied from
@@ -10,20 +17,125 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel.
  * The class renders (draws) characters to a binary "image" (2D array of booleans).
+ * Rendered glyphs are kept in a bounded, thread-safe LRU cache keyed by font, resolution and character,
+ * which can be saved to and loaded from a local file so a new JVM does not rasterize them again.
  */
 public class CharRenderer {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
+    private static final int MAX_CACHED_GLYPHS = 4096;
+    private static final int CACHE_FILE_MAGIC = 0x47_4C_59_31; // "GLY1"
+    /**
+     * Largest glyph side accepted from a cache file; glyphs are rendered at a few dozen pixels at most.
+     */
+    private static final int MAX_CACHED_GLYPH_PIXELS = 256;
+
+    private record GlyphKey(String fontName, int pixels, char c) {}
+
+    private static final Map<GlyphKey, boolean[][]> glyphCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<GlyphKey, boolean[][]> eldest) {
+                    return size() > MAX_CACHED_GLYPHS;
+                }
+            };
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * The returned array is a copy, so callers may modify it without affecting the cache.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        GlyphKey key = new GlyphKey(fontName, pixels, c);
+        boolean[][] glyph;
+        synchronized (glyphCache) {
+            glyph = glyphCache.get(key);
+        }
+        if(glyph == null) {
+            // Rendering is done outside the lock; two threads may render the same glyph, with the same result.
+            glyph = render(c, pixels, fontName);
+            synchronized (glyphCache) {
+                glyphCache.put(key, glyph);
+            }
+        }
+        return copy(glyph);
+    }
+
+    private static boolean[][] copy(boolean[][] glyph) {
+        boolean[][] result = new boolean[glyph.length][];
+        for(int y = 0; y < glyph.length; y++) {
+            result[y] = glyph[y].clone();
+        }
+        return result;
+    }
+
+    /**
+     * Saves the cached glyphs to a file, which can later be given to loadCache.
+     * @param file Path of the cache file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void saveCache(Path file) throws IOException {
+        List<Map.Entry<GlyphKey, boolean[][]>> entries;
+        synchronized (glyphCache) {
+            entries = new ArrayList<>(glyphCache.entrySet());
+        }
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(CACHE_FILE_MAGIC);
+            out.writeInt(entries.size());
+            for(Map.Entry<GlyphKey, boolean[][]> entry : entries) {
+                GlyphKey key = entry.getKey();
+                out.writeUTF(key.fontName());
+                out.writeInt(key.pixels());
+                out.writeChar(key.c());
+                for(boolean[] row : entry.getValue()) {
+                    for(boolean pixel : row) {
+                        out.writeBoolean(pixel);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads glyphs previously written by saveCache into the cache.
+     * Does nothing if the file does not exist. The cache is only updated once the whole file has been read, so an
+     * invalid file leaves it unchanged.
+     * @param file Path of the cache file.
+     * @throws IOException if the file exists but cannot be read or has an invalid format.
+     */
+    public static void loadCache(Path file) throws IOException {
+        if(!Files.exists(file)) {
+            return;
+        }
+        Map<GlyphKey, boolean[][]> glyphs = new LinkedHashMap<>();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != CACHE_FILE_MAGIC) {
+                throw new IOException("Not a glyph cache file: " + file);
+            }
+            int count = in.readInt();
+            if(count < 0 || count > MAX_CACHED_GLYPHS) {
+                throw new IOException("Invalid glyph count " + count + " in " + file);
+            }
+            for(int i = 0; i < count; i++) {
+                GlyphKey key = new GlyphKey(in.readUTF(), in.readInt(), in.readChar());
+                if(key.pixels() < 1 || key.pixels() > MAX_CACHED_GLYPH_PIXELS) {
+                    throw new IOException("Invalid glyph size " + key.pixels() + " in " + file);
+                }
+                boolean[][] glyph = new boolean[key.pixels()][key.pixels()];
+                for(boolean[] row : glyph) {
+                    for(int x = 0; x < row.length; x++) {
+                        row[x] = in.readBoolean();
+                    }
+                }
+                glyphs.put(key, glyph);
+            }
+        }
+        synchronized (glyphCache) {
+            glyphCache.putAll(glyphs);
+        }
     }
+
     private static boolean[][] render(char c, int pixels, String fontName) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixels);
@@ -0,0 +1,138 @@
+package ascii_art.img_to_char;
+
+import java.util.BitSet;
+
+/**
+ * Compact set of characters, stored as a bitmap indexed by character value.
+ * Printable ASCII fits in two words, and the bitmap grows on demand for other Unicode ranges. Ranges are added
+ * and removed word by word, iteration is always in ascending character order, and equal sets have equal hash
+ * codes in every run, so a set can be used as a cache key.
+ */
+public class CharSet {
+    private final BitSet bits;
+
+    /**
+     * Class constructor. Inits an empty set.
+     */
+    public CharSet() {
+        bits = new BitSet(Byte.MAX_VALUE + 1);
+    }
+
+    /**
+     * Class constructor. Inits a set of the given characters.
+     * @param chars Characters of the set.
+     */
+    public CharSet(char... chars) {
+        this();
+        for(char c : chars) {
+            add(c);
+        }
+    }
+
+    private CharSet(BitSet bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Adds a character to the set.
+     * @param c Character.
+     */
+    public void add(char c) {
+        bits.set(c);
+    }
+
+    /**
+     * Removes a character from the set.
+     * @param c Character.
+     */
+    public void remove(char c) {
+        bits.clear(c);
+    }
+
+    /**
+     * Adds all the characters of the range [start, end] to the set. (Assumes start <= end)
+     * @param start First character of the range.
+     * @param end Last character of the range.
+     */
+    public void addRange(char start, char end) {
+        bits.set(start, end + 1);
+    }
+
+    /**
+     * Removes all the characters of the range [start, end] from the set. (Assumes start <= end)
+     * @param start First character of the range.
+     * @param end Last character of the range.
+     */
+    public void removeRange(char start, char end) {
+        bits.clear(start, end + 1);
+    }
+
+    /**
+     * Checks if a character is in the set.
+     * @param c Character.
+     * @return True if the character is in the set.
+     */
+    public boolean contains(char c) {
+        return bits.get(c);
+    }
+
+    /**
+     * Getter for the number of characters in the set.
+     * @return Number of characters.
+     */
+    public int size() {
+        return bits.cardinality();
+    }
+
+    /**
+     * Checks if the set has no characters.
+     * @return True if the set is empty.
+     */
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    /**
+     * Returns the characters of the set in ascending order.
+     * @return Array of the characters.
+     */
+    public char[] toCharArray() {
+        char[] chars = new char[bits.cardinality()];
+        int i = 0;
+        for(int c = bits.nextSetBit(0); c >= 0; c = bits.nextSetBit(c + 1)) {
+            chars[i++] = (char) c;
+        }
+        return chars;
+    }
+
+    /**
+     * Returns an independent copy of the set, for instance to use as a cache key.
+     * @return Copy of the set.
+     */
+    public CharSet copy() {
+        return new CharSet((BitSet) bits.clone());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CharSet && bits.equals(((CharSet) other).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return bits.hashCode();
+    }
+
+    /**
+     * Returns the characters of the set in ascending order, each followed by a space.
+     * @return Characters of the set.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(char c : toCharArray()) {
+            builder.append(c).append(' ');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package ascii_art.img_to_char;
+
+import ascii_output.AsciiOutput;
+import image.Image;
+
+/**
+ * Class that converts the frames of an animation, reusing work between consecutive frames.
+ * The brightness to character table is built once for all the frames, and a cell keeps its previous character
+ * while its brightness stays within a threshold of the brightness it was matched at, so only the cells that
+ * actually changed are matched again. Each frame is read in a single streamed pass over its pixels.
+ */
+public class FrameMatcher {
+    private final String font;
+    private final CharBrightnessTable table;
+    private final double threshold;
+    private double[][] brightnessImage;
+    /**
+     * Brightness each cell's character was matched at.
+     */
+    private double[][] matchedBrightness;
+    private char[][] asciiImage;
+    private long matchedCells;
+    private long cells;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param font Font style.
+     * @param charSet The set of characters with which we would like to draw the frames.
+     * @param threshold Brightness change, in the range [0, 1], below which a cell keeps its character; 0 matches
+     *                  every cell of every frame.
+     */
+    public FrameMatcher(String font, CharSet charSet, double threshold) {
+        if(threshold < 0) throw new IllegalArgumentException();
+        this.font = font;
+        this.table = BrightnessImgCharMatcher.charBrightnessTable(charSet, font);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Converts a frame and pushes its rows to the output. The first frame, and any frame whose grid differs from
+     * the previous one, is matched entirely.
+     * @param frame Frame.
+     * @param numCharsInRow Number of characters in each row of the ASCII image.
+     * @param output Output receiving the rows of the ASCII image, in order.
+     */
+    public void matchFrame(Image frame, int numCharsInRow, AsciiOutput output) {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(frame, font);
+        int rows = matcher.rows(numCharsInRow);
+        boolean sameGrid = asciiImage != null && asciiImage.length == rows && asciiImage[0].length == numCharsInRow;
+        if(!sameGrid) {
+            brightnessImage = new double[rows][numCharsInRow];
+            matchedBrightness = new double[rows][numCharsInRow];
+            asciiImage = new char[rows][numCharsInRow];
+        }
+        matcher.streamBrightnessImage(brightnessImage);
+        output.begin(rows, numCharsInRow);
+        for(int row = 0; row < rows; row++) {
+            for(int col = 0; col < numCharsInRow; col++) {
+                double brightness = brightnessImage[row][col];
+                if(!sameGrid || !(Math.abs(brightness - matchedBrightness[row][col]) < threshold)) {
+                    asciiImage[row][col] = table.closestChar(brightness);
+                    matchedBrightness[row][col] = brightness;
+                    matchedCells++;
+                }
+            }
+            output.outputRow(asciiImage[row]);
+        }
+        output.end();
+        cells += (long) rows * numCharsInRow;
+    }
+
+    /**
+     * Getter for the number of cells matched with a character since the first frame.
+     * @return Number of matched cells.
+     */
+    public long getMatchedCells() {
+        return matchedCells;
+    }
+
+    /**
+     * Getter for the number of cells of all the frames converted so far.
+     * @return Number of cells.
+     */
+    public long getCells() {
+        return cells;
+    }
+}
@@ -0,0 +1,185 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Package-private lookup structure that matches the shape of a sub image with the character of the closest shape.
+ * A shape is a 4 by 4 grid of blocks packed into the 16 bits of an int, a bit being set where the block is
+ * brighter than the whole cell, for the glyphs as rendered by CharRenderer and for the sub images alike, so
+ * "/", "\", "|" and "-" are told apart even though they have about the same brightness.
+ * Glyphs of the same shape are grouped, and a table over all the 65536 shapes lists the groups at the smallest
+ * Hamming distance from each, so a match is one lookup followed by a scan of those few glyphs, which picks the one
+ * of the closest brightness. Sub images without enough contrast have no shape and are matched by brightness only.
+ */
+class GlyphShapeTable {
+    /**
+     * Number of blocks along each side of a shape.
+     */
+    static final int SIDE = 4;
+    /**
+     * Shape of a sub image that is too small or too flat to have one.
+     */
+    static final int NO_SHAPE = -1;
+    private static final int SHAPES = 1 << (SIDE * SIDE);
+    /**
+     * Smallest difference between the brightest and the darkest block of a sub image that has a shape.
+     */
+    private static final double MIN_CONTRAST = 0.1;
+    private static final int RESOLUTION = 16;
+
+    /**
+     * Glyphs sorted by shape and then by brightness, the glyphs of group g being in
+     * [groupStart[g], groupStart[g + 1]).
+     */
+    private final char[] glyphChars;
+    private final double[] glyphBrightness;
+    private final int[] groupStart;
+    /**
+     * Groups at the smallest distance from shape s, in [nearestStart[s], nearestStart[s + 1]) of nearestGroups.
+     */
+    private final int[] nearestStart;
+    private final int[] nearestGroups;
+
+    /**
+     * Class constructor. Renders the shape of every character and builds the table.
+     * @param chars Characters that can appear on the image.
+     * @param charBrightnessArray Stretched brightness of each character, at the same index as in chars.
+     * @param font Font style.
+     */
+    GlyphShapeTable(char[] chars, double[] charBrightnessArray, String font) {
+        int[] shapes = new int[chars.length];
+        for(int i = 0; i < chars.length; i++) {
+            shapes[i] = glyphShape(CharRenderer.getImg(chars[i], RESOLUTION, font));
+        }
+        Integer[] order = new Integer[chars.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> shapes[i])
+                .thenComparingDouble(i -> charBrightnessArray[i]).thenComparingInt(i -> chars[i]));
+        glyphChars = new char[chars.length];
+        glyphBrightness = new double[chars.length];
+        int[] groupShapes = new int[chars.length];
+        int[] starts = new int[chars.length + 1];
+        int groups = 0;
+        for(int i = 0; i < order.length; i++) {
+            int glyph = order[i];
+            if(groups == 0 || groupShapes[groups - 1] != shapes[glyph]) {
+                groupShapes[groups] = shapes[glyph];
+                starts[groups] = i;
+                groups++;
+            }
+            glyphChars[i] = chars[glyph];
+            glyphBrightness[i] = charBrightnessArray[glyph];
+        }
+        starts[groups] = chars.length;
+        groupStart = Arrays.copyOf(starts, groups + 1);
+        nearestStart = new int[SHAPES + 1];
+        int[] nearest = new int[SHAPES];
+        int size = 0;
+        for(int shape = 0; shape < SHAPES; shape++) {
+            nearestStart[shape] = size;
+            int minDistance = Integer.MAX_VALUE;
+            for(int group = 0; group < groups; group++) {
+                int distance = Integer.bitCount(shape ^ groupShapes[group]);
+                if(distance < minDistance) {
+                    minDistance = distance;
+                    size = nearestStart[shape];
+                }
+                if(distance == minDistance) {
+                    if(size == nearest.length) {
+                        nearest = Arrays.copyOf(nearest, nearest.length * 2);
+                    }
+                    nearest[size++] = group;
+                }
+            }
+        }
+        nearestStart[SHAPES] = size;
+        nearestGroups = Arrays.copyOf(nearest, size);
+    }
+
+    /**
+     * Computes the shape of a glyph: a block is set if its share of white pixels is above the whole glyph's.
+     * @param glyph Binary image of the glyph, true for white, RESOLUTION pixels wide and high.
+     * @return Shape.
+     */
+    private static int glyphShape(boolean[][] glyph) {
+        int blockSide = RESOLUTION / SIDE;
+        int[] blockWhite = new int[SIDE * SIDE];
+        int white = 0;
+        for(int y = 0; y < RESOLUTION; y++) {
+            for(int x = 0; x < RESOLUTION; x++) {
+                if(glyph[y][x]) {
+                    blockWhite[(y / blockSide) * SIDE + x / blockSide]++;
+                    white++;
+                }
+            }
+        }
+        int shape = 0;
+        for(int block = 0; block < blockWhite.length; block++) {
+            // blockWhite / blockSide^2 > white / RESOLUTION^2, in integers.
+            if(blockWhite[block] * SIDE * SIDE > white) {
+                shape |= 1 << block;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Computes the shape of a sub image from the brightness of its blocks.
+     * @param blockBrightness Brightness of the SIDE by SIDE blocks of the sub image, row by row.
+     * @param brightness Brightness of the whole sub image.
+     * @return Shape, or NO_SHAPE if the blocks are too close in brightness.
+     */
+    static int cellShape(double[] blockBrightness, double brightness) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int shape = 0;
+        for(int block = 0; block < SIDE * SIDE; block++) {
+            double value = blockBrightness[block];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if(value > brightness) {
+                shape |= 1 << block;
+            }
+        }
+        return max - min < MIN_CONTRAST ? NO_SHAPE : shape;
+    }
+
+    /**
+     * Computes the first pixel of a block of a sub image along either axis.
+     * @param start First pixel of the sub image, inclusive.
+     * @param end Last pixel of the sub image, exclusive.
+     * @param index Block, in [0, SIDE]; SIDE gives the end of the sub image.
+     * @return First pixel of the block.
+     */
+    static int blockStart(int start, int end, int index) {
+        return start + (end - start) * index / SIDE;
+    }
+
+    /**
+     * Finds the character whose shape is the closest to the given one, and among those the one whose brightness
+     * is the closest to the given brightness, the darker one on a tie.
+     * @param shape Shape of the sub image, not NO_SHAPE.
+     * @param brightness Brightness of the sub image.
+     * @return Closest character.
+     */
+    char closestChar(int shape, double brightness) {
+        // Every shape has at least one nearest group, whose first glyph is the initial candidate.
+        int best = groupStart[nearestGroups[nearestStart[shape]]];
+        double bestDistance = Math.abs(glyphBrightness[best] - brightness);
+        for(int i = nearestStart[shape]; i < nearestStart[shape + 1]; i++) {
+            int group = nearestGroups[i];
+            for(int glyph = groupStart[group]; glyph < groupStart[group + 1]; glyph++) {
+                double distance = Math.abs(glyphBrightness[glyph] - brightness);
+                if(distance < bestDistance ||
+                        (distance == bestDistance && glyphBrightness[glyph] < glyphBrightness[best])) {
+                    best = glyph;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return glyphChars[best];
+    }
+}
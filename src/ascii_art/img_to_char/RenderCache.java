@@ -0,0 +1,122 @@
+package ascii_art.img_to_char;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe least recently used cache of render results, bounded by the total memory of its values.
+ * Keeps hit and miss counters, so the effectiveness of the cache can be reported.
+ * @param <K> Key type, with value-based equals and hashCode.
+ * @param <V> Cached value type.
+ */
+public class RenderCache<K, V> {
+    private final Map<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private long weight;
+    private long hits;
+    private long misses;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param weigher Function giving the approximate size in bytes of a value.
+     * @param maxWeight Maximal total size in bytes of the cached values.
+     */
+    public RenderCache(ToLongFunction<V> weigher, long maxWeight) {
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Approximate size in bytes of a 2D array of chars.
+     * @param chars 2D array of chars.
+     * @return Size in bytes.
+     */
+    public static long weightOf(char[][] chars) {
+        return chars.length == 0 ? 0 : (long) chars.length * chars[0].length * Character.BYTES;
+    }
+
+    /**
+     * Approximate size in bytes of a 2D array of doubles.
+     * @param values 2D array of doubles.
+     * @return Size in bytes.
+     */
+    public static long weightOf(double[][] values) {
+        return values.length == 0 ? 0 : (long) values.length * values[0].length * Double.BYTES;
+    }
+
+    /**
+     * Approximate size in bytes of a 2D array of ints.
+     * @param values 2D array of ints.
+     * @return Size in bytes.
+     */
+    public static long weightOf(int[][] values) {
+        return values.length == 0 ? 0 : (long) values.length * values[0].length * Integer.BYTES;
+    }
+
+    /**
+     * Checks if a value of the given size can be cached at all.
+     * @param valueWeight Size in bytes of the value.
+     * @return True if the value fits in the cache.
+     */
+    public boolean fits(long valueWeight) {
+        return valueWeight <= maxWeight;
+    }
+
+    /**
+     * Returns the value of a key and marks it as most recently used, counting a hit or a miss.
+     * @param key Key.
+     * @return Cached value, or null if there is none.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if(value == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values until the total size fits the bound.
+     * Values larger than the bound are not cached.
+     * @param key Key.
+     * @param value Value, which must not be modified afterwards.
+     */
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if(!fits(valueWeight)) {
+            return;
+        }
+        V previous = entries.put(key, value);
+        if(previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += valueWeight;
+        Iterator<V> eldest = entries.values().iterator();
+        while(weight > maxWeight) {
+            weight -= weigher.applyAsLong(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Getter for the number of lookups that found a value.
+     * @return Number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter for the number of lookups that found no value.
+     * @return Number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
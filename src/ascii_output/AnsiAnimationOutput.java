@@ -0,0 +1,106 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Output the frames of an animation to an ANSI terminal, each output being a frame drawn over the previous one.
+ * The first frame, and any frame of a different size, is drawn entirely after clearing the screen; other frames
+ * only write the runs of cells that differ from the previous frame, each after a cursor addressing sequence.
+ * Cells are laid out as in ConsoleAsciiOutput, each char followed by a space.
+ */
+public class AnsiAnimationOutput implements AsciiOutput {
+    private static final String CLEAR_SCREEN = "\u001b[2J";
+    private static final String CURSOR_POSITION = "\u001b[%d;%dH";
+    private static final char SEPARATOR = ' ';
+    private static final int COLUMNS_PER_CELL = 2;
+
+    private final Writer writer;
+    /**
+     * Chars of the frame on screen.
+     */
+    private char[][] screen;
+    private boolean redraw;
+    private int row;
+    private long writtenCells;
+
+    /**
+     * Class constructor. Writes to the given stream, which is flushed after every frame but never closed.
+     * @param out Destination stream, usually the standard output of a terminal.
+     */
+    public AnsiAnimationOutput(OutputStream out) {
+        writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()));
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        redraw = screen == null || screen.length != rows || (rows > 0 && screen[0].length != columns);
+        if (redraw) {
+            screen = new char[rows][columns];
+            write(CLEAR_SCREEN);
+        }
+        row = 0;
+    }
+
+    @Override
+    public void outputRow(char[] chars) {
+        char[] screenRow = screen[row];
+        int col = 0;
+        while (col < chars.length) {
+            if (!redraw && chars[col] == screenRow[col]) {
+                col++;
+                continue;
+            }
+            // Writes the run of changed cells starting at col.
+            write(String.format(CURSOR_POSITION, row + 1, col * COLUMNS_PER_CELL + 1));
+            while (col < chars.length && (redraw || chars[col] != screenRow[col])) {
+                screenRow[col] = chars[col];
+                write(chars[col]);
+                write(SEPARATOR);
+                writtenCells++;
+                col++;
+            }
+        }
+        row++;
+    }
+
+    @Override
+    public void end() {
+        // Leaves the cursor below the frame.
+        write(String.format(CURSOR_POSITION, screen.length + 1, 1));
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Getter for the number of cells written since the first frame.
+     * @return Number of written cells.
+     */
+    public long getWrittenCells() {
+        return writtenCells;
+    }
+
+    private void write(String text) {
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(char c) {
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -3,11 +3,53 @@ package ascii_output;
 /**
  * An object implementing this interface can output a 2D array of chars
  * in some fashion.
+ * The array can also be streamed one row at a time: begin, then outputRow for every row in order, then end.
+ * Rows may come with the color of every char, packed as 0xRRGGBB; outputs without colors ignore them.
  * @author Dan Nirel
  */
 public interface AsciiOutput {
+    /**
+     * Start the output of a 2D array of chars of the specified size
+     */
+    default void begin(int rows, int columns) {}
+
+    /**
+     * Output the next row. The array may be reused by the caller once the method returns
+     */
+    void outputRow(char[] row);
+
+    /**
+     * Output the next row, with the color of each of its chars. Both arrays may be reused by the caller once the
+     * method returns
+     */
+    default void outputRow(char[] row, int[] colors) {
+        outputRow(row);
+    }
+
+    /**
+     * End the output, after its last row
+     */
+    default void end() {}
+
     /**
      * Output the specified 2D array of chars
      */
-    void output(char[][] chars);
+    default void output(char[][] chars) {
+        begin(chars.length, chars.length == 0 ? 0 : chars[0].length);
+        for (char[] row : chars) {
+            outputRow(row);
+        }
+        end();
+    }
+
+    /**
+     * Output the specified 2D array of chars, with the color of each char
+     */
+    default void output(char[][] chars, int[][] colors) {
+        begin(chars.length, chars.length == 0 ? 0 : chars[0].length);
+        for (int row = 0; row < chars.length; row++) {
+            outputRow(chars[row], colors[row]);
+        }
+        end();
+    }
 }
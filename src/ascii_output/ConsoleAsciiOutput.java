@@ -1,16 +1,156 @@
 package ascii_output;
 
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
 /**
  * Output a 2D array of chars to the console.
+ * Each row is assembled in a reusable char buffer and handed to a buffered writer, which is flushed at
+ * the end of every output, so writing does not allocate per character.
+ * Colored rows are written with ANSI 24-bit color sequences, one per run of chars of the same color, and the
+ * color is reset at the end of every row.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */
+public class ConsoleAsciiOutput implements AsciiOutput{
+    private static final char SEPARATOR = ' ';
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String COLOR_START = "\u001b[38;2;";
+    private static final char COLOR_SEPARATOR = ';';
+    private static final char COLOR_END = 'm';
+    private static final String RESET_COLOR = "\u001b[0m";
+    /**
+     * Length of the longest color sequence, with three digits per component.
+     */
+    private static final int MAX_COLOR_LENGTH = COLOR_START.length() + 3 * 3 + 2 + 1;
+
+    private final Writer writer;
+    private char[] rowBuffer = new char[0];
+
+    /**
+     * Class constructor. Writes to the standard output.
+     */
+    public ConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * Class constructor. Writes to the given stream, which is flushed but never closed.
+     * @param out Destination stream.
+     */
+    public ConsoleAsciiOutput(OutputStream out) {
+        writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()));
+    }
+
+    /**
+     * Class constructor. Writes to the given channel, which is never closed.
+     * @param channel Destination channel.
+     */
+    public ConsoleAsciiOutput(WritableByteChannel channel) {
+        this(Channels.newOutputStream(channel));
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        try {
+            int length = fillRowBuffer(row);
+            writer.write(rowBuffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
-    public void output(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+    public void outputRow(char[] row, int[] colors) {
+        try {
+            int length = fillColoredRowBuffer(row, colors);
+            writer.write(rowBuffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a row followed by a line separator into the row buffer, growing it if needed.
+     * @param row Row of chars.
+     * @return Number of chars written into the buffer.
+     */
+    private int fillRowBuffer(char[] row) {
+        int length = row.length * 2 + LINE_SEPARATOR.length();
+        if (rowBuffer.length < length) {
+            rowBuffer = new char[length];
+        }
+        int index = 0;
+        for (char c : row) {
+            rowBuffer[index++] = c;
+            rowBuffer[index++] = SEPARATOR;
+        }
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), rowBuffer, index);
+        return length;
+    }
+
+    /**
+     * Writes a colored row, a reset sequence and a line separator into the row buffer, growing it if needed.
+     * A color sequence is only written where the color differs from the previous char.
+     * @param row Row of chars.
+     * @param colors Color of each char, packed as 0xRRGGBB.
+     * @return Number of chars written into the buffer.
+     */
+    private int fillColoredRowBuffer(char[] row, int[] colors) {
+        int maxLength = row.length * (2 + MAX_COLOR_LENGTH) + RESET_COLOR.length() + LINE_SEPARATOR.length();
+        if (rowBuffer.length < maxLength) {
+            rowBuffer = new char[maxLength];
+        }
+        int index = 0;
+        for (int col = 0; col < row.length; col++) {
+            if (col == 0 || colors[col] != colors[col - 1]) {
+                index = putColor(colors[col], index);
             }
-            System.out.println();
+            rowBuffer[index++] = row[col];
+            rowBuffer[index++] = SEPARATOR;
+        }
+        RESET_COLOR.getChars(0, RESET_COLOR.length(), rowBuffer, index);
+        index += RESET_COLOR.length();
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), rowBuffer, index);
+        return index + LINE_SEPARATOR.length();
+    }
+
+    /**
+     * Writes the sequence setting the foreground color into the row buffer.
+     * @param color Color, packed as 0xRRGGBB.
+     * @param index Position of the sequence in the buffer.
+     * @return Position following the sequence.
+     */
+    private int putColor(int color, int index) {
+        COLOR_START.getChars(0, COLOR_START.length(), rowBuffer, index);
+        index += COLOR_START.length();
+        index = putComponent((color >> 16) & 0xFF, index);
+        rowBuffer[index++] = COLOR_SEPARATOR;
+        index = putComponent((color >> 8) & 0xFF, index);
+        rowBuffer[index++] = COLOR_SEPARATOR;
+        index = putComponent(color & 0xFF, index);
+        rowBuffer[index++] = COLOR_END;
+        return index;
+    }
+
+    private int putComponent(int value, int index) {
+        if (value >= 100) {
+            rowBuffer[index++] = (char) ('0' + value / 100);
+        }
+        if (value >= 10) {
+            rowBuffer[index++] = (char) ('0' + value / 10 % 10);
         }
+        rowBuffer[index++] = (char) ('0' + value % 10);
+        return index;
     }
 }
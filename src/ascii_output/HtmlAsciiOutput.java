@@ -0,0 +1,219 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Output a 2D array of chars to an HTML file, or to a channel such as an HTTP response.
+ * Rows are escaped through a pre-computed per-char table into a fixed size buffer that is drained to a file
+ * channel whenever it fills up, so the page is never built as a String in memory, and rows streamed through
+ * outputRow reach the disk while the following ones are still being computed.
+ * Colored rows wrap every run of chars of the same color in a single span, closed at the end of the row.
+ */
+public class HtmlAsciiOutput implements AsciiOutput {
+    private static final String HTML_START = "<!DOCTYPE html>\n<html>\n" +
+            "<body style=\"\tCOLOR:#000000;\tTEXT-ALIGN:center;\tFONT-SIZE:1px;\">\n" +
+            "<p style=\"\twhite-space:pre;\tFONT-FAMILY:%s;\tFONT-SIZE:%frem;\tLETTER-SPACING:0.15em;" +
+            "\tLINE-HEIGHT:%fem;\">\n";
+    private static final String HTML_END = "</p>\n</body>\n</html>\n";
+    private static final double FONT_SIZE_FACTOR = 150;
+    private static final double LINE_HEIGHT = 0.8;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ASCII_CHARS = 128;
+    private static final byte NEW_LINE = '\n';
+    private static final byte[][] ESCAPED_CHARS = createEscapeTable();
+    private static final byte[] SPAN_START = "<span style=\"color:#".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SPAN_START_END = "\">".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SPAN_END = "</span>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int COLOR_DIGITS = 6;
+
+    /**
+     * File replaced on every output, or null when writing to a channel given by the caller.
+     */
+    private final Path file;
+    private final String fontName;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] colorDigits = new byte[COLOR_DIGITS];
+    /**
+     * Channel of the file being written between begin and end, or the caller's channel.
+     */
+    private WritableByteChannel channel;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param filename Path of the HTML file to write, replaced on every output.
+     * @param fontName Font the page is displayed with.
+     */
+    public HtmlAsciiOutput(String filename, String fontName) {
+        this.file = Path.of(filename);
+        this.fontName = fontName;
+    }
+
+    /**
+     * Class constructor. Writes every output to the given channel, which is never closed.
+     * @param channel Destination channel.
+     * @param fontName Font the page is displayed with.
+     */
+    public HtmlAsciiOutput(WritableByteChannel channel, String fontName) {
+        this.file = null;
+        this.channel = channel;
+        this.fontName = fontName;
+    }
+
+    /**
+     * Builds the UTF-8 bytes of every ASCII char as it should appear in the page.
+     * @return Table of the escaped bytes, indexed by char.
+     */
+    private static byte[][] createEscapeTable() {
+        byte[][] table = new byte[ASCII_CHARS][];
+        for (int c = 0; c < ASCII_CHARS; c++) {
+            table[c] = new byte[]{(byte) c};
+        }
+        table['&'] = "&amp;".getBytes(StandardCharsets.US_ASCII);
+        table['<'] = "&lt;".getBytes(StandardCharsets.US_ASCII);
+        table['>'] = "&gt;".getBytes(StandardCharsets.US_ASCII);
+        table['"'] = "&quot;".getBytes(StandardCharsets.US_ASCII);
+        table['\''] = "&#39;".getBytes(StandardCharsets.US_ASCII);
+        return table;
+    }
+
+    @Override
+    public void begin(int rows, int columns) {
+        try {
+            if (file != null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            buffer.clear();
+            put(String.format(Locale.ROOT, HTML_START, fontName, FONT_SIZE_FACTOR / Math.max(1, columns),
+                    LINE_HEIGHT).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        try {
+            for (char c : row) {
+                put(escape(c));
+            }
+            put(NEW_LINE);
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public void outputRow(char[] row, int[] colors) {
+        try {
+            for (int col = 0; col < row.length; col++) {
+                if (col == 0 || colors[col] != colors[col - 1]) {
+                    if (col > 0) {
+                        put(SPAN_END);
+                    }
+                    putSpanStart(colors[col]);
+                }
+                put(escape(row[col]));
+            }
+            if (row.length > 0) {
+                put(SPAN_END);
+            }
+            put(NEW_LINE);
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            put(HTML_END.getBytes(StandardCharsets.UTF_8));
+            drain();
+            if (file != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    /**
+     * Closes the file after a write error.
+     * @param e Write error.
+     * @return Unchecked exception to throw.
+     */
+    private UncheckedIOException fail(IOException e) {
+        if (file != null && channel != null) {
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            channel = null;
+        }
+        return new UncheckedIOException(e);
+    }
+
+    /**
+     * Returns the bytes of a char as it should appear in the page.
+     * @param c Char.
+     * @return Escaped bytes; chars outside ASCII are written as numeric character references.
+     */
+    private static byte[] escape(char c) {
+        if (c < ASCII_CHARS) {
+            return ESCAPED_CHARS[c];
+        }
+        return ("&#" + (int) c + ";").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the opening tag of a span of the given color.
+     * @param color Color, packed as 0xRRGGBB.
+     * @throws IOException if the file cannot be written.
+     */
+    private void putSpanStart(int color) throws IOException {
+        for (int digit = COLOR_DIGITS - 1; digit >= 0; digit--) {
+            colorDigits[digit] = HEX_DIGITS[color & 0xF];
+            color >>>= 4;
+        }
+        put(SPAN_START);
+        put(colorDigits);
+        put(SPAN_START_END);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            drain();
+        }
+        buffer.put(bytes);
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+    }
+
+    /**
+     * Writes the content of the buffer to the file and empties it.
+     * @throws IOException if the file cannot be written.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
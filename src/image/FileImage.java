@@ -5,67 +5,74 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * A package-private class of the package image.
+ * Pixels are stored row after row as packed ARGB ints, so no Color object is kept per pixel.
  * @author Dan Nirel
  */
 class FileImage implements Image {
-    private static final Color DEFAULT_COLOR = Color.WHITE;
-
-    private final Color[][] pixelArray;
+    private final int[] pixelArray;
+    private final int width;
+    private final int height;
 
     public FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
-        int origWidth = im.getWidth(), origHeight = im.getHeight();
-        //im.getRGB(x, y)); getter for access to a specific RGB rates
-        int newWidth = changeBinaryDimensions(origWidth); //TODO: change
-        int newHeight = changeBinaryDimensions(origHeight); //TODO: change
-        pixelArray = new Color[newHeight][newWidth];
-        reAdaptImage(im, origWidth, origHeight, newWidth, newHeight);
-    }
-
-    private void reAdaptImage(BufferedImage im, int origWidth, int origHeight, int newWidth, int newHeight) {
-        for(int row = 0; row < newHeight; row++) {
-            for(int col = 0; col < newWidth; col++) {
-                if(!outOfBounds(origWidth, origHeight, col, row)) {
-                    pixelArray[row][col] = new Color(im.getRGB(col, row));
-                }
-                else {
-                    pixelArray[row][col] = DEFAULT_COLOR;
-                }
-            }
-        }
+        this(read(filename));
     }
 
-    private boolean outOfBounds(int origWidth, int origHeight, int col, int row) {
-        return origWidth <= col || origHeight <= row;
+    /**
+     * Class constructor. Copies the pixels of an already decoded image.
+     * @param im Decoded image.
+     */
+    FileImage(BufferedImage im) {
+        width = im.getWidth();
+        height = im.getHeight();
+        pixelArray = new int[Math.multiplyExact(width, height)];
+        readPixels(im);
     }
 
-    private double logBase2(int number) {
-        return (Math.log(number) / Math.log(2));
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if(im == null) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return im;
     }
 
-    private int changeBinaryDimensions(int dimension) {
-        return (int) (Math.pow(2, Math.ceil(logBase2(dimension))));
+    /**
+     * Copies the decoded image row by row into the packed pixel array.
+     * @param im Decoded image.
+     */
+    private void readPixels(BufferedImage im) {
+        for(int row = 0; row < height; row++) {
+            im.getRGB(0, row, width, 1, pixelArray, row * width, width);
+        }
     }
 
     @Override
     public int getWidth() {
-        //TODO: implement the function
-        return pixelArray[0].length;
+        return width;
     }
 
     @Override
     public int getHeight() {
-        //TODO: implement the function
-        return pixelArray.length;
+        return height;
     }
 
     @Override
     public Color getPixel(int x, int y) {
-        //TODO: implement the function
-        return pixelArray[y][x];
+        return new Color(getPixelRGB(x, y));
+    }
+
+    @Override
+    public int getPixelRGB(int x, int y) {
+        return pixelArray[y * width + x];
+    }
+
+    @Override
+    public void getRegionRGB(int x, int y, int width, int height, int[] dest, int offset, int scanSize) {
+        for(int row = 0; row < height; row++) {
+            System.arraycopy(pixelArray, (y + row) * this.width + x, dest, offset + row * scanSize, width);
+        }
     }
 }
@@ -1,8 +1,14 @@
 package image;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 
 /**
  * Facade for the image module and an interface representing an image.
@@ -14,18 +20,135 @@ public interface Image {
     int getHeight();
 
     /**
-     * Open an image from file. Each dimensions of the returned image is guaranteed
-     * to be a power of 2, but the dimensions may be different.
+     * Returns a pixel as a packed ARGB int (the format of Color.getRGB()), without allocating a Color.
+     * @param x x coordinate.
+     * @param y y coordinate.
+     * @return Packed ARGB value.
+     */
+    default int getPixelRGB(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
+    /**
+     * Copies a rectangular region of packed ARGB pixels into dest, one row after the other.
+     * @param x Left column of the region.
+     * @param y Top row of the region.
+     * @param width Region width.
+     * @param height Region height.
+     * @param dest Destination array.
+     * @param offset Index in dest of the region's top left pixel.
+     * @param scanSize Distance in dest between the starts of two consecutive rows.
+     */
+    default void getRegionRGB(int x, int y, int width, int height, int[] dest, int offset, int scanSize) {
+        for(int row = 0; row < height; row++) {
+            int rowStart = offset + row * scanSize;
+            for(int col = 0; col < width; col++) {
+                dest[rowStart + col] = getPixelRGB(x + col, y + row);
+            }
+        }
+    }
+
+    /**
+     * Copies a full row of packed ARGB pixels into the beginning of dest.
+     * @param y Row to copy.
+     * @param dest Destination array, at least getWidth() long.
+     */
+    default void getRowRGB(int y, int[] dest) {
+        getRegionRGB(0, y, getWidth(), 1, dest, 0, getWidth());
+    }
+
+    /**
+     * Returns the image made of every factor-th pixel of every factor-th row: its pixel (x, y) is the pixel
+     * (x * factor, y * factor) of this image. Images read from a file may decode only those pixels.
+     * @param factor Subsampling factor along both axes, 1 for this image itself.
+     * @return Image of ceil(getWidth() / factor) by ceil(getHeight() / factor) pixels.
+     */
+    default Image subsampled(int factor) {
+        if(factor < 1) throw new IllegalArgumentException();
+        return factor == 1 ? this : new SubsampledImage(this, factor);
+    }
+
+    /**
+     * Tells if the rows of the image should be read in order, because its pixels are decoded from the file on
+     * demand and reading distant rows concurrently decodes them again and again.
+     * @return True if the rows should be read in a single sequential pass.
+     */
+    default boolean readsRowsInOrder() {
+        return false;
+    }
+
+    /**
+     * Open an image from file. The returned image has the dimensions of the image in the file.
+     * Binary PPM and PGM files are memory mapped instead of decoded, and images too large to be decoded in the
+     * heap at once are decoded in bands of rows on demand.
      * @param filename a path to an image file on disk
-     * @return an object implementing Image if the operation was successful,
-     * null otherwise
-     */
-    static Image fromFile(String filename) {
-        try {
-            return new FileImage(filename);
-        } catch(IOException ioe) {
-            return null;
+     * @return an object implementing Image
+     * @throws IOException if the file cannot be read, its format is not supported or it cannot be decoded
+     */
+    static Image fromFile(String filename) throws IOException {
+        if(MappedImage.isMappable(filename)) {
+            return new MappedImage(filename);
+        }
+        if(TiledFileImage.exceedsHeap(filename)) {
+            return new TiledFileImage(filename);
         }
+        return new FileImage(filename);
+    }
+
+    /**
+     * Decode an image from a stream, such as an upload. The whole image is decoded in the heap.
+     * @param in a stream of an image file, which is not closed
+     * @return an object implementing Image
+     * @throws IOException if the stream cannot be read, its format is not supported or it cannot be decoded
+     */
+    static Image fromStream(InputStream in) throws IOException {
+        BufferedImage im = ImageIO.read(in);
+        if(im == null) {
+            throw new IOException("Unsupported image format");
+        }
+        return fromBufferedImage(im);
+    }
+
+    /**
+     * Reads the dimensions of an image from a stream, such as an upload, without decoding its pixels.
+     * @param in a stream of an image file, which is not closed
+     * @return the width and height of the image
+     * @throws IOException if the stream cannot be read or its format is not supported
+     */
+    static Dimension dimensionsOf(InputStream in) throws IOException {
+        try(ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if(readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Checks if decoding a whole image of the given dimensions would take too much of the heap; fromFile decodes
+     * such images in bands of rows, and fromStream should not be given them.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return True if the image is too large to be decoded at once.
+     */
+    static boolean exceedsHeap(int width, int height) {
+        return TiledFileImage.exceedsHeap(width, height);
+    }
+
+    /**
+     * Copy an already decoded image, such as a frame of an animation.
+     * @param im a decoded image, which can be modified afterwards
+     * @return an object implementing Image
+     */
+    static Image fromBufferedImage(BufferedImage im) {
+        return new FileImage(im);
     }
 
     /**
@@ -37,10 +160,26 @@ public interface Image {
                 this, this::getPixel, 1, 1);
     }
 
+    /**
+     * Allows iterating square sub images by order (first row, second row and so on).
+     * @param pixels Side of each sub image.
+     * @return an Iterable<Image> of the sub images, those at the right and bottom edges may be smaller
+     */
     default Iterable<Image> imageIntoSubImages(int pixels) {
+        return imageIntoSubImages(pixels, pixels);
+    }
+
+    /**
+     * Allows iterating sub images of arbitrary size by order (first row, second row and so on).
+     * @param cellWidth Width of each sub image.
+     * @param cellHeight Height of each sub image.
+     * @return an Iterable<Image> of the sub images, those at the right and bottom edges are clipped to the image
+     */
+    default Iterable<Image> imageIntoSubImages(int cellWidth, int cellHeight) {
         return new ImageIterableProperty<>(this,
-                (x,y) -> new SubImage(this, x, y, pixels, pixels),
-                pixels,
-                pixels);
+                (x,y) -> new SubImage(this, x, y,
+                        Math.min(cellWidth, getWidth() - x), Math.min(cellHeight, getHeight() - y)),
+                cellWidth,
+                cellHeight);
     }
 }
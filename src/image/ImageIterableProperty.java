@@ -2,21 +2,28 @@ package image;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.function.BiFunction;
 
 /**
  * A package-private class of the package image.
  * @author Dan Nirel
  */
 class ImageIterableProperty<T> implements Iterable<T> {
+    /**
+     * Property of the pixel at given coordinates, taking primitive coordinates so no Integer is boxed per pixel.
+     */
+    @FunctionalInterface
+    interface PropertySupplier<T> {
+        T apply(int x, int y);
+    }
+
     private final Image img;
-    private final BiFunction<Integer, Integer, T> propertySupplier;
+    private final PropertySupplier<T> propertySupplier;
     private final int pixelJumpX;
     private final int pixelJumpY;
 
     public ImageIterableProperty(
             Image img,
-            BiFunction<Integer, Integer, T> propertySupplier, int pixelJumpX, int pixelJumpY) {
+            PropertySupplier<T> propertySupplier, int pixelJumpX, int pixelJumpY) {
         this.img = img;
         this.propertySupplier = propertySupplier;
         this.pixelJumpX = pixelJumpX;
@@ -0,0 +1,85 @@
+package image;
+
+/**
+ * Grayscale value of packed RGB pixels, 0.2126 R + 0.7152 G + 0.0722 B, in the range [0, 255].
+ * Whole rows are converted with the Vector API when the jdk.incubator.vector module is present (run with
+ * --add-modules jdk.incubator.vector), and one pixel at a time otherwise. Both conversions give identical values:
+ * the documented tolerance between them is 0.
+ */
+public final class Luminance {
+    static final double RED = 0.2126;
+    static final double GREEN = 0.7152;
+    static final double BLUE = 0.0722;
+    private static final String VECTOR_CONVERTER = "image.VectorLuminance";
+
+    /**
+     * Conversion of a row of packed RGB pixels to grayscale values.
+     */
+    interface RowConverter {
+        /**
+         * Converts the first pixels of a row.
+         * @param pixels Packed RGB pixels.
+         * @param length Number of pixels to convert.
+         * @param dest Resulting grayscale values, at the same indices.
+         */
+        void convert(int[] pixels, int length, double[] dest);
+    }
+
+    private static final RowConverter SCALAR_CONVERTER = Luminance::convertRowScalar;
+    private static final RowConverter CONVERTER = loadConverter();
+
+    private Luminance() {
+    }
+
+    /**
+     * Loads the Vector API converter, falling back to the scalar conversion when the module is absent or the
+     * platform has no suitable vector shape.
+     * @return Row converter.
+     */
+    private static RowConverter loadConverter() {
+        try {
+            return (RowConverter) Class.forName(VECTOR_CONVERTER).getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return SCALAR_CONVERTER;
+        }
+    }
+
+    /**
+     * Checks if rows are converted with the Vector API.
+     * @return True if the Vector API is used, false for the scalar conversion.
+     */
+    public static boolean isVectorized() {
+        return CONVERTER != SCALAR_CONVERTER;
+    }
+
+    /**
+     * Converts the first pixels of a row of packed RGB pixels to grayscale values.
+     * @param pixels Packed RGB pixels.
+     * @param length Number of pixels to convert.
+     * @param dest Resulting grayscale values in the range [0, 255], at the same indices.
+     */
+    public static void convertRow(int[] pixels, int length, double[] dest) {
+        CONVERTER.convert(pixels, length, dest);
+    }
+
+    /**
+     * Converts the first pixels of a row one at a time.
+     * @param pixels Packed RGB pixels.
+     * @param length Number of pixels to convert.
+     * @param dest Resulting grayscale values, at the same indices.
+     */
+    static void convertRowScalar(int[] pixels, int length, double[] dest) {
+        for(int i = 0; i < length; i++) {
+            dest[i] = of(pixels[i]);
+        }
+    }
+
+    /**
+     * Converts a packed RGB pixel to its grayscale value.
+     * @param rgb Packed RGB pixel.
+     * @return Grayscale value in the range [0, 255].
+     */
+    public static double of(int rgb) {
+        return ((rgb >> 16) & 0xFF) * RED + ((rgb >> 8) & 0xFF) * GREEN + (rgb & 0xFF) * BLUE;
+    }
+}
@@ -0,0 +1,182 @@
+package image;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A package-private class of the package image.
+ * Image over a binary PPM (P6, RGB) or PGM (P5, grayscale) file with 8 bit samples, whose pixels are read
+ * directly from a memory mapping of the file. Nothing is decoded into the heap, so images larger than the heap
+ * can be converted, with the operating system page cache holding the pixels.
+ */
+class MappedImage implements Image {
+    private static final String GRAY_MAGIC = "P5";
+    private static final String RGB_MAGIC = "P6";
+    private static final int MAX_HEADER_BYTES = 1024;
+    private static final int MAX_SAMPLE_VALUE = 255;
+    private static final int OPAQUE = 0xFF000000;
+    /**
+     * Largest mapping of a single buffer, the file is mapped in several chunks of whole rows.
+     */
+    private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int maxValue;
+    private final int rowBytes;
+    private final int rowsPerChunk;
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Class constructor. Parses the header and maps the pixels of the file.
+     * @param filename Path of a binary PPM or PGM file.
+     * @throws IOException if the file cannot be read or is not a supported PPM or PGM file.
+     */
+    MappedImage(String filename) throws IOException {
+        try(FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            String magic = nextToken(header);
+            if(!magic.equals(GRAY_MAGIC) && !magic.equals(RGB_MAGIC)) {
+                throw new IOException("Not a binary PPM or PGM file: " + filename);
+            }
+            channels = magic.equals(RGB_MAGIC) ? 3 : 1;
+            width = parseHeaderNumber(header, filename);
+            height = parseHeaderNumber(header, filename);
+            maxValue = parseHeaderNumber(header, filename);
+            if(width <= 0 || height <= 0 || maxValue <= 0 || maxValue > MAX_SAMPLE_VALUE) {
+                throw new IOException("Unsupported PPM or PGM header: " + filename);
+            }
+            // A single whitespace separates the header from the pixels.
+            long dataStart = header.position() + 1;
+            long rowLength = (long) width * channels;
+            if(rowLength > MAX_CHUNK_BYTES || dataStart + rowLength * height > channel.size()) {
+                throw new IOException("Unsupported or truncated PPM or PGM file: " + filename);
+            }
+            rowBytes = (int) rowLength;
+            rowsPerChunk = (int) (MAX_CHUNK_BYTES / rowBytes);
+            chunks = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+            for(int chunk = 0; chunk < chunks.length; chunk++) {
+                int rows = Math.min(rowsPerChunk, height - chunk * rowsPerChunk);
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataStart + (long) chunk * rowsPerChunk * rowBytes, (long) rows * rowBytes);
+            }
+        }
+    }
+
+    /**
+     * Checks if a file starts with the magic number of a binary PPM or PGM file.
+     * @param filename Path of a file.
+     * @return True if the file is a binary PPM or PGM file.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isMappable(String filename) throws IOException {
+        try(FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(GRAY_MAGIC.length());
+            channel.read(magic, 0);
+            String value = new String(magic.array(), 0, magic.position(), StandardCharsets.US_ASCII);
+            return value.equals(GRAY_MAGIC) || value.equals(RGB_MAGIC);
+        }
+    }
+
+    /**
+     * Reads the next whitespace separated token of the header, skipping comments.
+     * @param header Header bytes.
+     * @return Token, empty at the end of the header bytes.
+     */
+    private static String nextToken(ByteBuffer header) {
+        StringBuilder token = new StringBuilder();
+        while(header.hasRemaining()) {
+            char c = (char) header.get(header.position());
+            if(c == '#' && token.length() == 0) {
+                while(header.hasRemaining() && header.get() != '\n') {
+                    // Skips the comment line.
+                }
+            }
+            else if(Character.isWhitespace(c)) {
+                if(token.length() > 0) {
+                    return token.toString();
+                }
+                header.get();
+            }
+            else {
+                token.append(c);
+                header.get();
+            }
+        }
+        return token.toString();
+    }
+
+    private static int parseHeaderNumber(ByteBuffer header, String filename) throws IOException {
+        try {
+            return Integer.parseInt(nextToken(header));
+        } catch(NumberFormatException e) {
+            throw new IOException("Invalid PPM or PGM header: " + filename, e);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelRGB(x, y));
+    }
+
+    @Override
+    public int getPixelRGB(int x, int y) {
+        return readPixel(chunks[y / rowsPerChunk], (y % rowsPerChunk) * rowBytes + x * channels);
+    }
+
+    @Override
+    public void getRegionRGB(int x, int y, int width, int height, int[] dest, int offset, int scanSize) {
+        for(int row = 0; row < height; row++) {
+            MappedByteBuffer chunk = chunks[(y + row) / rowsPerChunk];
+            int index = ((y + row) % rowsPerChunk) * rowBytes + x * channels;
+            int rowStart = offset + row * scanSize;
+            for(int col = 0; col < width; col++) {
+                dest[rowStart + col] = readPixel(chunk, index);
+                index += channels;
+            }
+        }
+    }
+
+    /**
+     * Reads a pixel with absolute gets, which are safe to use from several threads.
+     * @param chunk Mapped chunk of the pixel.
+     * @param index Index of the pixel's first sample in the chunk.
+     * @return Packed ARGB pixel.
+     */
+    private int readPixel(MappedByteBuffer chunk, int index) {
+        int red = scale(chunk.get(index));
+        if(channels == 1) {
+            return OPAQUE | (red << 16) | (red << 8) | red;
+        }
+        return OPAQUE | (red << 16) | (scale(chunk.get(index + 1)) << 8) | scale(chunk.get(index + 2));
+    }
+
+    /**
+     * Scales a sample to the range [0, 255].
+     * @param sample Sample byte.
+     * @return Scaled sample.
+     */
+    private int scale(byte sample) {
+        int value = sample & 0xFF;
+        return maxValue == MAX_SAMPLE_VALUE ? value : Math.min(MAX_SAMPLE_VALUE, value * MAX_SAMPLE_VALUE / maxValue);
+    }
+}
@@ -73,6 +73,25 @@ public class SubImage implements Image {
         return this.img.getPixel(this.initRow + x, this.initCol + y);
     }
 
+    /**
+     * Overrides packed pixel getter, delegating to the original image.
+     * @param x x input.
+     * @param y y input.
+     * @return Packed ARGB pixel.
+     */
+    @Override
+    public int getPixelRGB(int x, int y) {
+        return this.img.getPixelRGB(this.initRow + x, this.initCol + y);
+    }
+
+    /**
+     * Overrides region copy, delegating to the original image with the sub image offsets.
+     */
+    @Override
+    public void getRegionRGB(int x, int y, int width, int height, int[] dest, int offset, int scanSize) {
+        this.img.getRegionRGB(this.initRow + x, this.initCol + y, width, height, dest, offset, scanSize);
+    }
+
     /**
      * Getter for image width.
      * @return Image width.
@@ -0,0 +1,58 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A package-private class of the package image.
+ * View of every factor-th pixel of every factor-th row of an image, which holds no pixels of its own.
+ */
+class SubsampledImage implements Image {
+    private final Image img;
+    private final int factor;
+    private final int width;
+    private final int height;
+
+    /**
+     * Class constructor. Inits instance of the class.
+     * @param img Original image.
+     * @param factor Subsampling factor along both axes.
+     */
+    SubsampledImage(Image img, int factor) {
+        if(img instanceof SubsampledImage) {
+            var subsampled = (SubsampledImage) img;
+            this.img = subsampled.img;
+            this.factor = subsampled.factor * factor;
+        }
+        else {
+            this.img = img;
+            this.factor = factor;
+        }
+        width = (img.getWidth() + factor - 1) / factor;
+        height = (img.getHeight() + factor - 1) / factor;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelRGB(x, y));
+    }
+
+    @Override
+    public int getPixelRGB(int x, int y) {
+        return img.getPixelRGB(x * factor, y * factor);
+    }
+
+    @Override
+    public boolean readsRowsInOrder() {
+        return img.readsRowsInOrder();
+    }
+}
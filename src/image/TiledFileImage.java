@@ -0,0 +1,219 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A package-private class of the package image.
+ * Image decoded lazily in bands of full rows, through the source region of an ImageReader, so images larger than
+ * the heap can be converted. Only the most recently used bands are kept; reading the rows in order, as the
+ * brightness stage does, decodes each band once. Most decoders must decode all the rows above a band to reach
+ * it, so random or concurrent access to distant rows is slow; readsRowsInOrder tells callers to read the rows
+ * in a single pass. A subsampled image is decoded directly at its reduced size.
+ */
+class TiledFileImage implements Image {
+    private static final int CACHED_BANDS = 2;
+    /**
+     * A band takes at most this fraction of the maximal heap size.
+     */
+    private static final int BAND_HEAP_FRACTION = 16;
+    /**
+     * A whole decoded image, held twice while FileImage copies it, must take at most this fraction of the
+     * maximal heap size, otherwise it is decoded in bands.
+     */
+    private static final int DECODE_HEAP_FRACTION = 4;
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int bandRows;
+    private final Map<Integer, int[]> bands = new LinkedHashMap<>(CACHED_BANDS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > CACHED_BANDS;
+        }
+    };
+
+    /**
+     * Class constructor. Reads the dimensions of the image, without decoding its pixels.
+     * @param filename Path of an image file.
+     * @throws IOException if the file cannot be read or its format is not supported.
+     */
+    TiledFileImage(String filename) throws IOException {
+        file = new File(filename);
+        ImageReader reader = openReader(file);
+        try {
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+        } finally {
+            closeReader(reader);
+        }
+        long heapBandPixels = Runtime.getRuntime().maxMemory() / BAND_HEAP_FRACTION / Integer.BYTES;
+        bandRows = (int) Math.max(1, Math.min(height, heapBandPixels / width));
+    }
+
+    /**
+     * Checks, without decoding the file, if decoding a whole image file would take too much of the heap.
+     * @param filename Path of an image file.
+     * @return True if the image should be decoded in bands.
+     * @throws IOException if the file cannot be read or its format is not supported.
+     */
+    static boolean exceedsHeap(String filename) throws IOException {
+        ImageReader reader = openReader(new File(filename));
+        try {
+            return exceedsHeap(reader.getWidth(0), reader.getHeight(0));
+        } finally {
+            closeReader(reader);
+        }
+    }
+
+    /**
+     * Checks if decoding a whole image of the given dimensions would take too much of the heap.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return True if the image should be decoded in bands.
+     */
+    static boolean exceedsHeap(int width, int height) {
+        long decodedSize = (long) width * height * Integer.BYTES;
+        return 2 * decodedSize > Runtime.getRuntime().maxMemory() / DECODE_HEAP_FRACTION;
+    }
+
+    /**
+     * Opens a reader on an image file.
+     * @param file Image file.
+     * @return Reader, whose input must be closed with closeReader.
+     * @throws IOException if the file cannot be read or its format is not supported.
+     */
+    private static ImageReader openReader(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if(input == null) {
+            throw new IOException("Cannot read image file: " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    private static void closeReader(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if(input instanceof ImageInputStream) {
+            ((ImageInputStream) input).close();
+        }
+    }
+
+    /**
+     * Returns a band of packed ARGB pixels, decoding it if it is not cached.
+     * @param band Index of the band.
+     * @return Pixels of the band, row after row.
+     */
+    private synchronized int[] band(int band) {
+        int[] pixels = bands.get(band);
+        if(pixels == null) {
+            try {
+                pixels = readBand(band);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bands.put(band, pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes the rows of a band from the file.
+     * @param band Index of the band.
+     * @return Pixels of the band, row after row.
+     * @throws IOException if the file cannot be decoded.
+     */
+    private int[] readBand(int band) throws IOException {
+        int firstRow = band * bandRows;
+        int rows = Math.min(bandRows, height - firstRow);
+        ImageReader reader = openReader(file);
+        try {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, firstRow, width, rows));
+            BufferedImage im = reader.read(0, param);
+            int[] pixels = new int[width * rows];
+            im.getRGB(0, 0, width, rows, pixels, 0, width);
+            return pixels;
+        } finally {
+            closeReader(reader);
+        }
+    }
+
+    /**
+     * Decodes only the sampled pixels, through the source subsampling of the reader, unless even those would take
+     * too much of the heap, in which case they are read from the bands.
+     */
+    @Override
+    public Image subsampled(int factor) {
+        if(factor == 1) {
+            return this;
+        }
+        long sampledSize = (long) ((width + factor - 1) / factor) * ((height + factor - 1) / factor) * Integer.BYTES;
+        if(2 * sampledSize > Runtime.getRuntime().maxMemory() / DECODE_HEAP_FRACTION) {
+            return Image.super.subsampled(factor);
+        }
+        try {
+            ImageReader reader = openReader(file);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return new FileImage(reader.read(0, param));
+            } finally {
+                closeReader(reader);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean readsRowsInOrder() {
+        return true;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelRGB(x, y));
+    }
+
+    @Override
+    public int getPixelRGB(int x, int y) {
+        return band(y / bandRows)[(y % bandRows) * width + x];
+    }
+
+    @Override
+    public void getRegionRGB(int x, int y, int width, int height, int[] dest, int offset, int scanSize) {
+        for(int row = 0; row < height; row++) {
+            int[] pixels = band((y + row) / bandRows);
+            System.arraycopy(pixels, ((y + row) % bandRows) * this.width + x, dest, offset + row * scanSize, width);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package image;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A package-private class of the package image.
+ * Converts rows of packed RGB pixels to grayscale values with the Vector API, a vector of ints at a time.
+ * Every lane computes red * RED + green * GREEN + blue * BLUE in doubles with the same operations, in the same
+ * order, as Luminance.of, so the results are identical to the scalar conversion. Only loaded by Luminance when
+ * the jdk.incubator.vector module is present.
+ */
+class VectorLuminance implements Luminance.RowConverter {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * Ints with as many lanes as DOUBLES, converted lane by lane to doubles.
+     */
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public void convert(int[] pixels, int length, double[] dest) {
+        int vectorEnd = INTS.loopBound(length);
+        int i = 0;
+        for(; i < vectorEnd; i += INTS.length()) {
+            IntVector rgb = IntVector.fromArray(INTS, pixels, i);
+            DoubleVector red = channel(rgb, 16);
+            DoubleVector green = channel(rgb, 8);
+            DoubleVector blue = channel(rgb, 0);
+            red.mul(Luminance.RED).add(green.mul(Luminance.GREEN)).add(blue.mul(Luminance.BLUE)).intoArray(dest, i);
+        }
+        for(; i < length; i++) {
+            dest[i] = Luminance.of(pixels[i]);
+        }
+    }
+
+    /**
+     * Extracts a color channel of every lane and widens it to doubles.
+     * @param rgb Packed RGB pixels.
+     * @param shift Position of the channel's lowest bit.
+     * @return Channel values in the range [0, 255].
+     */
+    private static DoubleVector channel(IntVector rgb, int shift) {
+        return (DoubleVector) rgb.lanewise(VectorOperators.LSHR, shift).and(0xFF)
+                .convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+}